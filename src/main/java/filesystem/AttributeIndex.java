@@ -0,0 +1,261 @@
+package proofpoint;
+
+import proofpoint.entities.ContainerEntity;
+import proofpoint.entities.Entity;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Secondary indexes over entity attributes: a set per type, and sorted indexes on size,
+ * creation time and update time.
+ *
+ * The index remembers the attribute values each entity was filed under, so
+ * {@link #add(Entity)} can be called again after an entity changed to move it to its new
+ * position. It is maintained by FileSystemManager for changes made through the manager.
+ */
+class AttributeIndex {
+
+    /**
+     * A way to produce query candidates from one index.
+     */
+    static final class Scan {
+        final String name;
+        // Number of candidates, or cutoff + 1 if counting stopped at the cutoff
+        final int count;
+        final Iterable<Entity> candidates;
+        // Whether candidates come in the query's sort order
+        final boolean ordered;
+        // Estimated number of candidates find() visits before it has its answer
+        double cost;
+        // Estimated fraction of all indexed entities that match every indexed criterion
+        double selectivity;
+
+        Scan(String name, int count, Iterable<Entity> candidates, boolean ordered) {
+            this.name = name;
+            this.count = count;
+            this.candidates = candidates;
+            this.ordered = ordered;
+        }
+    }
+
+    // The attribute values an entity is currently filed under
+    private static final class Key {
+        final String type;
+        final long size;
+        final LocalDateTime createdAt;
+        final LocalDateTime updatedAt;
+
+        Key(Entity entity) {
+            this.type = entity.getType();
+            this.size = entity.getSize();
+            this.createdAt = entity.getCreatedAt();
+            this.updatedAt = entity.getUpdatedAt();
+        }
+    }
+
+    private final Map<Entity, Key> keys = new HashMap<>();
+    private final Map<String, Set<Entity>> byType = new HashMap<>();
+    private final TreeMap<Long, Set<Entity>> bySize = new TreeMap<>();
+    private final TreeMap<LocalDateTime, Set<Entity>> byCreatedAt = new TreeMap<>();
+    private final TreeMap<LocalDateTime, Set<Entity>> byUpdatedAt = new TreeMap<>();
+
+    /**
+     * Files an entity under its current attributes, replacing any earlier entry.
+     */
+    void add(Entity entity) {
+        remove(entity);
+        Key key = new Key(entity);
+        keys.put(entity, key);
+        byType.computeIfAbsent(key.type, k -> new HashSet<>()).add(entity);
+        bySize.computeIfAbsent(key.size, k -> new HashSet<>()).add(entity);
+        byCreatedAt.computeIfAbsent(key.createdAt, k -> new HashSet<>()).add(entity);
+        byUpdatedAt.computeIfAbsent(key.updatedAt, k -> new HashSet<>()).add(entity);
+    }
+
+    /**
+     * Removes an entity from every index.
+     */
+    void remove(Entity entity) {
+        Key key = keys.remove(entity);
+        if (key == null) {
+            return;
+        }
+        removeFrom(byType, key.type, entity);
+        removeFrom(bySize, key.size, entity);
+        removeFrom(byCreatedAt, key.createdAt, entity);
+        removeFrom(byUpdatedAt, key.updatedAt, entity);
+    }
+
+    /**
+     * Files an entity and all its descendants.
+     */
+    void addTree(Entity entity) {
+        add(entity);
+        if (entity instanceof ContainerEntity) {
+            for (Entity child : ((ContainerEntity) entity).getChildren()) {
+                addTree(child);
+            }
+        }
+    }
+
+    /**
+     * Removes an entity and all its descendants.
+     */
+    void removeTree(Entity entity) {
+        remove(entity);
+        if (entity instanceof ContainerEntity) {
+            for (Entity child : ((ContainerEntity) entity).getChildren()) {
+                removeTree(child);
+            }
+        }
+    }
+
+    /**
+     * Returns the number of indexed entities.
+     */
+    int size() {
+        return keys.size();
+    }
+
+    /**
+     * Picks the index scan that visits the fewest candidates for a query.
+     *
+     * A scan whose candidates are unordered, while the query is sorted, has to visit every
+     * candidate before sorting. Otherwise find() stops once it has {@code limit} matches, which
+     * takes about {@code limit / selectivity} candidates, where the selectivity of the other
+     * criteria is estimated from their index counts as if they were independent.
+     *
+     * @param query the query to plan
+     * @return the cheapest scan, or null if no criterion of the query is indexed
+     */
+    Scan bestScan(Query query) {
+        List<Scan> scans = new ArrayList<>();
+        // Counting a range stops once it passes the smallest count so far, since beyond that
+        // it can only win as an ordered scan, which does not depend on its exact count
+        int cutoff = keys.size();
+        if (query.type != null) {
+            Set<Entity> entities = byType.getOrDefault(query.type, Collections.emptySet());
+            scans.add(new Scan("type", entities.size(), entities, false));
+            cutoff = Math.min(cutoff, entities.size());
+        }
+        if (query.minSize != Long.MIN_VALUE || query.maxSize != Long.MAX_VALUE) {
+            Long low = query.minSize == Long.MIN_VALUE ? null : query.minSize;
+            Long high = query.maxSize == Long.MAX_VALUE ? null : query.maxSize;
+            Scan scan = rangeScan("size", bySize, low, true, high, true, query, Query.SortKey.SIZE, cutoff);
+            scans.add(scan);
+            cutoff = Math.min(cutoff, scan.count);
+        }
+        if (query.createdAfter != null || query.createdBefore != null) {
+            Scan scan = rangeScan("createdAt", byCreatedAt, query.createdAfter, false,
+                    query.createdBefore, false, query, Query.SortKey.CREATED_AT, cutoff);
+            scans.add(scan);
+            cutoff = Math.min(cutoff, scan.count);
+        }
+        if (query.updatedAfter != null || query.updatedBefore != null) {
+            scans.add(rangeScan("updatedAt", byUpdatedAt, query.updatedAfter, false,
+                    query.updatedBefore, false, query, Query.SortKey.UPDATED_AT, cutoff));
+        }
+        if (scans.isEmpty()) {
+            return null;
+        }
+
+        double total = Math.max(1, keys.size());
+        double selectivity = 1;
+        for (Scan scan : scans) {
+            selectivity *= Math.min(1, scan.count / total);
+        }
+        Scan best = null;
+        for (Scan scan : scans) {
+            scan.selectivity = selectivity;
+            scan.cost = scan.count;
+            if (query.sortKey == null || scan.ordered) {
+                double rest = 1;
+                for (Scan other : scans) {
+                    if (other != scan) {
+                        rest *= Math.min(1, other.count / total);
+                    }
+                }
+                scan.cost = visitsUntilLimit(query.limit, rest, scan.count);
+            }
+            if (best == null || scan.cost < best.cost) {
+                best = scan;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Estimates how many of {@code available} entities a plan that stops at the limit visits.
+     *
+     * @param limit       the query limit
+     * @param selectivity the estimated fraction of visited entities that match
+     * @param available   the number of entities the plan can visit at most
+     */
+    static double visitsUntilLimit(int limit, double selectivity, double available) {
+        return selectivity <= 0 ? available : Math.min(available, limit / selectivity);
+    }
+
+    private static <K> Scan rangeScan(String name, NavigableMap<K, Set<Entity>> index,
+                                      K low, boolean lowInclusive, K high, boolean highInclusive,
+                                      Query query, Query.SortKey sortKey, int cutoff) {
+        NavigableMap<K, Set<Entity>> range = index;
+        if (low != null) {
+            range = range.tailMap(low, lowInclusive);
+        }
+        if (high != null) {
+            range = range.headMap(high, highInclusive);
+        }
+        boolean ordered = query.sortKey == sortKey;
+        if (ordered && query.descending) {
+            range = range.descendingMap();
+        }
+
+        int count = 0;
+        for (Set<Entity> bucket : range.values()) {
+            count += bucket.size();
+            if (count > cutoff) {
+                count = cutoff + 1;
+                break;
+            }
+        }
+        NavigableMap<K, Set<Entity>> scanned = range;
+        return new Scan(name, count, () -> flatten(scanned.values().iterator()), ordered);
+    }
+
+    private static Iterator<Entity> flatten(Iterator<Set<Entity>> buckets) {
+        return new Iterator<>() {
+            private Iterator<Entity> current = Collections.emptyIterator();
+
+            @Override
+            public boolean hasNext() {
+                while (!current.hasNext() && buckets.hasNext()) {
+                    current = buckets.next().iterator();
+                }
+                return current.hasNext();
+            }
+
+            @Override
+            public Entity next() {
+                hasNext();
+                return current.next();
+            }
+        };
+    }
+
+    private static <K> void removeFrom(Map<K, Set<Entity>> index, K key, Entity entity) {
+        Set<Entity> bucket = index.get(key);
+        if (bucket != null && bucket.remove(entity) && bucket.isEmpty()) {
+            index.remove(key);
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package proofpoint;
+
+/**
+ * Summary of a bulk operation such as {@code deleteAll}, {@code moveAll} or {@code copyAll}.
+ */
+public class BulkResult {
+    private final int applied;
+    private final int skipped;
+
+    /**
+     * Constructs a summary.
+     *
+     * @param applied the number of matched entities the operation was applied to
+     * @param skipped the number of matched entities left unchanged, e.g. because of a name conflict
+     */
+    public BulkResult(int applied, int skipped) {
+        this.applied = applied;
+        this.skipped = skipped;
+    }
+
+    public int getApplied() {
+        return applied;
+    }
+
+    public int getSkipped() {
+        return skipped;
+    }
+
+    /**
+     * Combines two summaries, e.g. from different shards.
+     *
+     * @param other the summary to add
+     * @return a summary with both counts added up
+     */
+    public BulkResult plus(BulkResult other) {
+        return new BulkResult(applied + other.applied, skipped + other.skipped);
+    }
+
+    @Override
+    public String toString() {
+        return applied + " applied, " + skipped + " skipped";
+    }
+}
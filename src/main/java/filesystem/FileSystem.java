@@ -0,0 +1,181 @@
+package proofpoint;
+
+import proofpoint.entities.Entity;
+import proofpoint.workload.WorkloadRecorder;
+
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * Operations of an in-memory file system made of drives, folders, text files and zip files.
+ *
+ * Paths are backslash-separated and start with the drive name, e.g. "C\\folder\\file.txt".
+ * Implementations report invalid paths and illegal operations with IllegalArgumentException.
+ *
+ * Entities returned by {@link #list}, {@link #resolve} and {@link #find} are the live objects
+ * of the tree, not copies. Implementations only guard their own operations, so a caller that
+ * shares a file system between threads may read a returned entity only while no other thread
+ * changes that part of the tree, and must not modify it directly.
+ */
+public interface FileSystem {
+
+    /**
+     * The filter the unfiltered bulk operations pass to their filtered overloads. A recorder
+     * records a bulk call with this filter as the unfiltered operation. Any other predicate, even
+     * an equivalent lambda such as {@code e -> true}, is recorded as a filtered call, which a
+     * replay skips because the predicate cannot be written to the trace.
+     */
+    Predicate<Entity> ANY = entity -> true;
+
+    /**
+     * Creates a new entity.
+     *
+     * @param type       The type of entity to create (drive, folder, textfile, zipfile).
+     * @param name       The name of the new entity.
+     * @param parentPath The path to the parent container (ignored for drives).
+     */
+    void create(String type, String name, String parentPath);
+
+    /**
+     * Deletes an entity and all its contents recursively.
+     *
+     * @param path The path to the entity to delete.
+     */
+    void delete(String path);
+
+    /**
+     * Moves an entity into another container.
+     *
+     * @param sourcePath      The full path to the entity to move.
+     * @param destinationPath The full path to the destination container.
+     */
+    void move(String sourcePath, String destinationPath);
+
+    /**
+     * Copies an entity and its contents into another container.
+     *
+     * @param sourcePath      The full path to the entity to copy.
+     * @param destinationPath The full path to the destination container.
+     */
+    void copy(String sourcePath, String destinationPath);
+
+    /**
+     * Lists the direct children of a container.
+     *
+     * @param path The path to the container.
+     * @return The children of the container.
+     */
+    List<Entity> list(String path);
+
+    /**
+     * Writes text content to a text file.
+     *
+     * @param path    The full path to the text file.
+     * @param content The content to write.
+     */
+    void writeToFile(String path, String content);
+
+    /**
+     * Resolves a path string to the corresponding entity.
+     *
+     * @param path The full path to the entity.
+     * @return The entity located at the path.
+     */
+    Entity resolve(String path);
+
+    /**
+     * Finds all entities with the given name.
+     *
+     * @param name The name to search for.
+     * @return The paths of all matching entities.
+     */
+    List<String> search(String name);
+
+    /**
+     * Renames an entity in place.
+     *
+     * @param path    The full path to the entity.
+     * @param newName The new name.
+     */
+    void rename(String path, String newName);
+
+    /**
+     * Deletes every entity below the drives that matches a glob, in a single pass over the tree.
+     *
+     * @param pattern A glob such as "C\\logs\\**\\*.tmp" (see {@link PathPattern}).
+     * @return The number of matched entities deleted. Their descendants are deleted with them
+     *         but not counted.
+     */
+    BulkResult deleteAll(String pattern);
+
+    /**
+     * Deletes every entity below the drives that matches a glob and a predicate.
+     *
+     * @param pattern A glob (see {@link PathPattern}).
+     * @param filter  An extra condition a matched entity must satisfy (see {@link #ANY}).
+     * @return The number of matched entities deleted. Their descendants are deleted with them
+     *         but not counted.
+     */
+    BulkResult deleteAll(String pattern, Predicate<Entity> filter);
+
+    /**
+     * Moves every entity below the drives that matches a glob into a container.
+     *
+     * @param pattern         A glob (see {@link PathPattern}).
+     * @param destinationPath The path to the destination container.
+     * @return The number of entities moved and skipped.
+     */
+    BulkResult moveAll(String pattern, String destinationPath);
+
+    /**
+     * Moves every entity below the drives that matches a glob and a predicate into a container.
+     *
+     * @param pattern         A glob (see {@link PathPattern}).
+     * @param destinationPath The path to the destination container.
+     * @param filter          An extra condition a matched entity must satisfy (see {@link #ANY}).
+     * @return The number of entities moved and skipped.
+     */
+    BulkResult moveAll(String pattern, String destinationPath, Predicate<Entity> filter);
+
+    /**
+     * Copies every entity below the drives that matches a glob into a container.
+     *
+     * @param pattern         A glob (see {@link PathPattern}).
+     * @param destinationPath The path to the destination container.
+     * @return The number of entities copied and skipped.
+     */
+    BulkResult copyAll(String pattern, String destinationPath);
+
+    /**
+     * Copies every entity below the drives that matches a glob and a predicate into a container.
+     *
+     * @param pattern         A glob (see {@link PathPattern}).
+     * @param destinationPath The path to the destination container.
+     * @param filter          An extra condition a matched entity must satisfy (see {@link #ANY}).
+     * @return The number of entities copied and skipped.
+     */
+    BulkResult copyAll(String pattern, String destinationPath, Predicate<Entity> filter);
+
+    /**
+     * Finds entities by type, size and timestamps.
+     *
+     * @param subtreePath The path to search under, including the entity itself; null for all drives.
+     * @param query       The criteria, sort order and limit.
+     * @return The matching entities.
+     */
+    List<Entity> find(String subtreePath, Query query);
+
+    /**
+     * Turns the secondary attribute indexes used by {@link #find(String, Query)} on or off.
+     *
+     * @param enabled true to maintain the indexes, false to drop them
+     */
+    void setIndexingEnabled(boolean enabled);
+
+    /**
+     * Starts capturing every operation into the given recorder, or stops when it is null.
+     *
+     * @param recorder the recorder to capture operations into, or null
+     */
+    void setRecorder(WorkloadRecorder recorder);
+}
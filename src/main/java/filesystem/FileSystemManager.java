@@ -1,12 +1,18 @@
 package proofpoint;
 
 import proofpoint.entities.*;
+import proofpoint.workload.OperationType;
+import proofpoint.workload.WorkloadRecorder;
 
 import java.io.*;
 import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
 
 /**
  * Manages an in-memory file system supporting drives, folders, text files, and zip files.
@@ -20,11 +26,59 @@ import java.util.Map;
  * - Folder: Can contain other folders or files.
  * - TextFile: Leaf node, supports content writing.
  * - ZipFile: Container similar to folders.
+ *
+ * Public operations are synchronized on the manager, so it can be shared between threads.
  */
 
-public class FileSystemManager {
+public class FileSystemManager implements FileSystem {
     // A map of drive names to Drive objects representing the root of each file system tree.
     private final Map<String, Drive> drives = new HashMap<>();
+    // Optional heap budget for text file contents; null keeps every content on the heap.
+    private final ContentStore contentStore;
+    // Optional capture of the operation stream for offline replay.
+    private volatile WorkloadRecorder recorder;
+    // Optional secondary indexes for find(); null answers every query with a tree walk.
+    private AttributeIndex index;
+
+    /**
+     * Constructs a file system that keeps all text file contents on the heap.
+     */
+    public FileSystemManager() {
+        this(null);
+    }
+
+    /**
+     * Constructs a file system whose text file contents are managed by the given store,
+     * which spills the least recently used contents to disk once its heap budget is exceeded.
+     *
+     * @param contentStore the store for text file contents, or null to keep them on the heap
+     */
+    public FileSystemManager(ContentStore contentStore) {
+        this.contentStore = contentStore;
+    }
+
+    public ContentStore getContentStore() {
+        return contentStore;
+    }
+
+    /**
+     * Returns the drives at the roots of this file system.
+     *
+     * @return A snapshot of the current drives.
+     */
+    public synchronized List<Drive> getDrives() {
+        return new ArrayList<>(drives.values());
+    }
+
+    /**
+     * Starts capturing every operation into the given recorder, or stops when it is null.
+     *
+     * @param recorder the recorder to capture operations into, or null
+     */
+    @Override
+    public void setRecorder(WorkloadRecorder recorder) {
+        this.recorder = recorder;
+    }
 
     /**
      * Creates a new entity in the file system.
@@ -35,14 +89,19 @@ public class FileSystemManager {
      * @throws IllegalArgumentException If the parent path doesn't exist, or the entity already exists,
      *                                  or the type is invalid, or the parent cannot contain children.
      */
-    public void create(String type, String name, String parentPath) {
+    @Override
+    public synchronized void create(String type, String name, String parentPath) {
+        record(OperationType.CREATE, type.equalsIgnoreCase("drive") ? name : parentPath + "\\" + name,
+                type.toLowerCase(), 0);
         if (type.equalsIgnoreCase("drive")) {
             if (drives.containsKey(name)) {
                 throw new IllegalArgumentException("Drive already exists: " + name);
             }
-            drives.put(name, new Drive(name));
+            Drive drive = new Drive(name);
+            drives.put(name, drive);
+            reindex(drive);
         } else {
-            Entity parent = resolve(parentPath);
+            Entity parent = lookup(parentPath);
 
             if (!(parent instanceof ContainerEntity)) {
                 throw new IllegalArgumentException("Illegal File System Operation: Parent cannot contain children");
@@ -59,7 +118,9 @@ public class FileSystemManager {
                     newEntity = new Folder(name, container);
                     break;
                 case "textfile":
-                    newEntity = new TextFile(name, container);
+                    TextFile file = new TextFile(name, container);
+                    file.setContentStore(contentStore);
+                    newEntity = file;
                     break;
                 case "zipfile":
                     newEntity = new ZipFile(name, container);
@@ -68,6 +129,7 @@ public class FileSystemManager {
                     throw new IllegalArgumentException("Invalid entity type: " + type);
             }
             container.addChild(newEntity);
+            reindex(newEntity);
         }
     }
 
@@ -77,8 +139,14 @@ public class FileSystemManager {
      * @param path The path to the entity to delete.
      * @throws IllegalArgumentException If the path is invalid or does not exist.
      */
-    public void delete(String path) {
-        Entity entity = resolve(path);
+    @Override
+    public synchronized void delete(String path) {
+        record(OperationType.DELETE, path, null, 0);
+        Entity entity = lookup(path);
+        if (contentStore != null) {
+            forEachTextFile(entity, TextFile::discardContentStore);
+        }
+        unindexTree(entity);
         if (entity.getParent() == null) {
             // Entity is a Drive
             drives.remove(entity.getName());
@@ -94,31 +162,44 @@ public class FileSystemManager {
      * @param sourcePath      The full path to the entity to move.
      * @param destinationPath The full path to the destination container (must be a folder or zip file).
      * @throws IllegalArgumentException If any of the paths is invalid, the destination is not a container,
-     *                                  or an entity with the same name already exists at the destination.
+     *                                  an entity with the same name already exists at the destination,
+     *                                  or the destination rejects the entity. The entity is left in place.
      */
-    public void move(String sourcePath, String destinationPath) {
-        Entity source = resolve(sourcePath);
-        Entity dest = resolve(destinationPath);
+    @Override
+    public synchronized void move(String sourcePath, String destinationPath) {
+        record(OperationType.MOVE, sourcePath, destinationPath, 0);
+        Entity source = lookup(sourcePath);
+        Entity dest = lookup(destinationPath);
 
         if (!(dest instanceof ContainerEntity)) {
             throw new IllegalArgumentException("Destination is not a folder-like entity");
         }
 
-        ContainerEntity sourceParent = (ContainerEntity) source.getParent();
+        ContainerEntity sourceParent = source.getParent();
         ContainerEntity destination = (ContainerEntity) dest;
 
+        if (sourceParent == null) {
+            throw new IllegalArgumentException("Cannot move a drive: " + sourcePath);
+        }
         if (destination.hasChild(source.getName())) {
             throw new IllegalArgumentException("Path already exists at destination");
         }
-
+        if (isAncestorOrSelf(source, destination)) {
+            throw new IllegalArgumentException("Cannot move an entity into itself: " + sourcePath);
+        }
+        // Attach before detaching, so an entity the destination rejects stays where it was
+        if (!tryAttach(source, destination)) {
+            throw new IllegalArgumentException("Destination cannot hold " + source.getType() + ": " + destinationPath);
+        }
         sourceParent.removeChild(source.getName());
-        source.setParent(destination);
-        destination.addChild(source);
+        reindex(source);
     }
 
-    public void copy(String sourcePath, String destinationPath) {
-        Entity source = resolve(sourcePath);
-        Entity dest = resolve(destinationPath);
+    @Override
+    public synchronized void copy(String sourcePath, String destinationPath) {
+        record(OperationType.COPY, sourcePath, destinationPath, 0);
+        Entity source = lookup(sourcePath);
+        Entity dest = lookup(destinationPath);
 
         if (!(dest instanceof ContainerEntity)) {
             throw new IllegalArgumentException("Destination is not a folder-like entity");
@@ -132,10 +213,14 @@ public class FileSystemManager {
 
         Entity copied = deepCopy(source, destination);
         destination.addChild(copied);
+        forEachTextFile(copied, file -> file.setContentStore(contentStore));
+        indexTree(copied);
     }
 
-    public List<Entity> list(String path) {
-        Entity source = resolve(path);
+    @Override
+    public synchronized List<Entity> list(String path) {
+        record(OperationType.LIST, path, null, 0);
+        Entity source = lookup(path);
 
         if (!(source instanceof ContainerEntity)) {
             throw new IllegalArgumentException("Entity is not a folder-like container");
@@ -152,12 +237,15 @@ public class FileSystemManager {
      * @param content The content to write.
      * @throws IllegalArgumentException If the path does not refer to a text file.
      */
-    public void writeToFile(String path, String content) {
-        Entity entity = resolve(path);
+    @Override
+    public synchronized void writeToFile(String path, String content) {
+        record(OperationType.WRITE, path, null, content.length());
+        Entity entity = lookup(path);
         if (!(entity instanceof TextFile)) {
             throw new IllegalArgumentException("Not a text file");
         }
         ((TextFile) entity).setContent(content);
+        reindex(entity);
     }
 
     /**
@@ -167,7 +255,13 @@ public class FileSystemManager {
      * @return The entity located at the path.
      * @throws IllegalArgumentException If the path is invalid, or any part of the path is not found.
      */
-    public Entity resolve(String path) {
+    @Override
+    public synchronized Entity resolve(String path) {
+        record(OperationType.RESOLVE, path, null, 0);
+        return lookup(path);
+    }
+
+    private Entity lookup(String path) {
         String[] parts = path.split("\\\\");
         if (parts.length == 0 || parts[0].isEmpty()) {
             throw new IllegalArgumentException("Invalid path: " + path);
@@ -191,7 +285,9 @@ public class FileSystemManager {
         return current;
     }
 
-    public List<String> search(String name) {
+    @Override
+    public synchronized List<String> search(String name) {
+        record(OperationType.SEARCH, null, name, 0);
         List<String> result = new ArrayList<>();
 
         for (Drive drive : drives.values()) {
@@ -213,8 +309,10 @@ public class FileSystemManager {
         }
     }
 
-    public void rename(String path, String newName) {
-        Entity entity = resolve(path);
+    @Override
+    public synchronized void rename(String path, String newName) {
+        record(OperationType.RENAME, path, newName, 0);
+        Entity entity = lookup(path);
 
         if (entity.getParent() == null) {
             // It's a drive — just rename the drive in the `drives` map
@@ -235,7 +333,262 @@ public class FileSystemManager {
         }
     }
 
-    public void saveToDisk(String filename) {
+    /**
+     * Deletes every entity matching a glob, in a single pass over the tree.
+     * Drives themselves are never matched.
+     *
+     * @param pattern A glob such as "C\\logs\\**\\*.tmp" (see {@link PathPattern}).
+     * @return The number of matched entities deleted. Their descendants are deleted with them
+     *         but not counted.
+     * @throws IllegalArgumentException If the pattern is invalid.
+     */
+    @Override
+    public BulkResult deleteAll(String pattern) {
+        return deleteAll(pattern, ANY);
+    }
+
+    /**
+     * Deletes every entity that matches a glob and a predicate, in a single pass over the tree.
+     * Entities that match the glob but not the predicate are searched for matching descendants.
+     *
+     * @param pattern A glob (see {@link PathPattern}).
+     * @param filter  An extra condition a matched entity must satisfy.
+     * @return The number of matched entities deleted. Their descendants are deleted with them
+     *         but not counted.
+     * @throws IllegalArgumentException If the pattern is invalid.
+     */
+    @Override
+    public synchronized BulkResult deleteAll(String pattern, Predicate<Entity> filter) {
+        record(filter == ANY ? OperationType.DELETE_ALL : OperationType.DELETE_ALL_FILTERED, null, pattern, 0);
+        int[] deleted = {0};
+        walk(PathPattern.compile(pattern), filter, entity -> {
+            if (contentStore != null) {
+                forEachTextFile(entity, TextFile::discardContentStore);
+            }
+            unindexTree(entity);
+            deleted[0]++;
+            return true;
+        });
+        return new BulkResult(deleted[0], 0);
+    }
+
+    /**
+     * Moves every entity matching a glob into a destination container.
+     * Matches that would clash with an existing name, would be moved into themselves,
+     * or are rejected by the destination are skipped.
+     *
+     * @param pattern         A glob (see {@link PathPattern}).
+     * @param destinationPath The path to the destination container.
+     * @return The number of entities moved and skipped.
+     * @throws IllegalArgumentException If the pattern is invalid or the destination is not a container.
+     */
+    @Override
+    public BulkResult moveAll(String pattern, String destinationPath) {
+        return moveAll(pattern, destinationPath, ANY);
+    }
+
+    /**
+     * Moves every entity that matches a glob and a predicate into a destination container.
+     *
+     * @param pattern         A glob (see {@link PathPattern}).
+     * @param destinationPath The path to the destination container.
+     * @param filter          An extra condition a matched entity must satisfy.
+     * @return The number of entities moved and skipped.
+     * @throws IllegalArgumentException If the pattern is invalid or the destination is not a container.
+     */
+    @Override
+    public synchronized BulkResult moveAll(String pattern, String destinationPath, Predicate<Entity> filter) {
+        record(filter == ANY ? OperationType.MOVE_ALL : OperationType.MOVE_ALL_FILTERED, destinationPath, pattern, 0);
+        ContainerEntity destination = lookupContainer(destinationPath);
+        int moved = 0;
+        int skipped = 0;
+        for (Entity entity : collect(PathPattern.compile(pattern), filter)) {
+            ContainerEntity oldParent = entity.getParent();
+            if (isAncestorOrSelf(entity, destination) || !tryAttach(entity, destination)) {
+                skipped++;
+                continue;
+            }
+            oldParent.removeChild(entity.getName());
+            reindex(entity);
+            moved++;
+        }
+        return new BulkResult(moved, skipped);
+    }
+
+    /**
+     * Copies every entity matching a glob into a destination container.
+     * Matches that would clash with an existing name or are rejected by the destination are skipped.
+     *
+     * @param pattern         A glob (see {@link PathPattern}).
+     * @param destinationPath The path to the destination container.
+     * @return The number of entities copied and skipped.
+     * @throws IllegalArgumentException If the pattern is invalid or the destination is not a container.
+     */
+    @Override
+    public BulkResult copyAll(String pattern, String destinationPath) {
+        return copyAll(pattern, destinationPath, ANY);
+    }
+
+    /**
+     * Copies every entity that matches a glob and a predicate into a destination container.
+     *
+     * @param pattern         A glob (see {@link PathPattern}).
+     * @param destinationPath The path to the destination container.
+     * @param filter          An extra condition a matched entity must satisfy.
+     * @return The number of entities copied and skipped.
+     * @throws IllegalArgumentException If the pattern is invalid or the destination is not a container.
+     */
+    @Override
+    public synchronized BulkResult copyAll(String pattern, String destinationPath, Predicate<Entity> filter) {
+        record(filter == ANY ? OperationType.COPY_ALL : OperationType.COPY_ALL_FILTERED, destinationPath, pattern, 0);
+        ContainerEntity destination = lookupContainer(destinationPath);
+        int copied = 0;
+        int skipped = 0;
+        for (Entity entity : collect(PathPattern.compile(pattern), filter)) {
+            if (destination.hasChild(entity.getName())) {
+                skipped++;
+                continue;
+            }
+            Entity copy = deepCopy(entity, null);
+            if (tryAttach(copy, destination)) {
+                indexTree(copy);
+                copied++;
+            } else {
+                skipped++;
+            }
+        }
+        return new BulkResult(copied, skipped);
+    }
+
+    /**
+     * Turns the secondary attribute indexes used by {@link #find(String, Query)} on or off.
+     * Turning them on builds them with one walk over the whole tree; afterwards they are
+     * updated incrementally by every operation of this manager.
+     *
+     * @param enabled true to maintain the indexes, false to drop them
+     */
+    @Override
+    public synchronized void setIndexingEnabled(boolean enabled) {
+        if (!enabled) {
+            index = null;
+        } else if (index == null) {
+            rebuildIndex();
+        }
+    }
+
+    /**
+     * Finds entities by type, size and timestamps.
+     *
+     * When indexes are enabled, the planner estimates how many entities each index scan and a
+     * walk of the subtree would visit, and picks the cheapest. A scan checks each candidate is
+     * inside the subtree. A scan in the query's sort order, or any plan for an unsorted query,
+     * stops once it has {@code limit} matches, so it may win even with many candidates.
+     *
+     * @param subtreePath The path to search under, including the entity itself; null for all drives.
+     * @param query       The criteria, sort order and limit.
+     * @return The matching entities.
+     * @throws IllegalArgumentException If the subtree path is invalid.
+     */
+    @Override
+    public synchronized List<Entity> find(String subtreePath, Query query) {
+        Entity root = subtreePath == null ? null : lookup(subtreePath);
+        AttributeIndex.Scan scan = plan(root, query);
+        Comparator<Entity> comparator = query.comparator();
+        // Without a sort, or with candidates already in sort order, the first matches are the answer
+        boolean stopAtLimit = comparator == null || (scan != null && scan.ordered);
+
+        List<Entity> result = new ArrayList<>();
+        if (scan != null) {
+            for (Entity candidate : scan.candidates) {
+                if (stopAtLimit && result.size() >= query.limit) {
+                    break;
+                }
+                if (query.matches(candidate) && (root == null || isAncestorOrSelf(root, candidate))) {
+                    result.add(candidate);
+                }
+            }
+        } else if (root != null) {
+            findRecursive(root, query, stopAtLimit, result);
+        } else {
+            for (Drive drive : drives.values()) {
+                findRecursive(drive, query, stopAtLimit, result);
+            }
+        }
+
+        if (comparator != null && !(scan != null && scan.ordered)) {
+            result.sort(comparator);
+        }
+        return result.size() > query.limit ? new ArrayList<>(result.subList(0, query.limit)) : result;
+    }
+
+    /**
+     * Describes how {@link #find(String, Query)} would run a query.
+     *
+     * @param subtreePath The path to search under; null for all drives.
+     * @param query       The query to plan.
+     * @return "walk", or "index:" followed by the index name (type, size, createdAt, updatedAt).
+     */
+    public synchronized String explain(String subtreePath, Query query) {
+        AttributeIndex.Scan scan = plan(subtreePath == null ? null : lookup(subtreePath), query);
+        return scan == null ? "walk" : "index:" + scan.name;
+    }
+
+    // Returns the index scan to use, or null to walk the subtree
+    private AttributeIndex.Scan plan(Entity root, Query query) {
+        if (index == null) {
+            return null;
+        }
+        AttributeIndex.Scan scan = index.bestScan(query);
+        if (scan == null) {
+            return null;
+        }
+        int bound = (int) Math.min(Integer.MAX_VALUE - 1, Math.ceil(scan.cost));
+        int walkSize = root == null ? index.size() : countUpTo(root, bound);
+        // An unsorted walk stops at the limit too
+        double walkCost = query.sortKey == null
+                ? AttributeIndex.visitsUntilLimit(query.limit, scan.selectivity, walkSize) : walkSize;
+        return walkCost <= scan.cost ? null : scan;
+    }
+
+    // Counts the entities in a subtree, giving up once the count passes the limit
+    private int countUpTo(Entity entity, int limit) {
+        int count = 1;
+        if (entity instanceof ContainerEntity) {
+            for (Entity child : ((ContainerEntity) entity).getChildren()) {
+                if (count > limit) {
+                    break;
+                }
+                count += countUpTo(child, limit - count);
+            }
+        }
+        return count;
+    }
+
+    private boolean findRecursive(Entity entity, Query query, boolean stopAtLimit, List<Entity> result) {
+        if (stopAtLimit && result.size() >= query.limit) {
+            return false;
+        }
+        if (query.matches(entity)) {
+            result.add(entity);
+        }
+        if (entity instanceof ContainerEntity) {
+            for (Entity child : ((ContainerEntity) entity).getChildren()) {
+                if (!findRecursive(child, query, stopAtLimit, result)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private void rebuildIndex() {
+        index = new AttributeIndex();
+        for (Drive drive : drives.values()) {
+            index.addTree(drive);
+        }
+    }
+
+    public synchronized void saveToDisk(String filename) {
         try (ObjectOutputStream out = new ObjectOutputStream(new FileOutputStream(filename))) {
             out.writeObject(drives);
             System.out.println("File system saved to disk.");
@@ -245,17 +598,287 @@ public class FileSystemManager {
     }
 
     @SuppressWarnings("unchecked")
-    public void loadFromDisk(String filename) {
+    public synchronized void loadFromDisk(String filename) {
         try (ObjectInputStream in = new ObjectInputStream(new FileInputStream(filename))) {
             Map<String, Drive> loadedDrives = (Map<String, Drive>) in.readObject();
+            if (contentStore != null) {
+                for (Drive drive : drives.values()) {
+                    forEachTextFile(drive, TextFile::discardContentStore);
+                }
+                for (Drive drive : loadedDrives.values()) {
+                    forEachTextFile(drive, file -> file.setContentStore(contentStore));
+                }
+            }
             drives.clear();
             drives.putAll(loadedDrives);
+            if (index != null) {
+                rebuildIndex();
+            }
             System.out.println("File system loaded from disk.");
         } catch (IOException | ClassNotFoundException e) {
             throw new RuntimeException("Error loading from disk", e);
         }
     }
 
+    /**
+     * Detaches every entity matching a glob and a predicate, so another shard can take ownership.
+     * The detached entities still point at their old parents, see {@link #restoreAll(List)}.
+     */
+    synchronized List<Entity> detachAll(PathPattern pattern, Predicate<Entity> filter) {
+        List<Entity> detached = new ArrayList<>();
+        walk(pattern, filter, entity -> {
+            unindexTree(entity);
+            detached.add(entity);
+            return true;
+        });
+        return detached;
+    }
+
+    /**
+     * Returns unattached deep copies of every entity matching a glob and a predicate.
+     */
+    synchronized List<Entity> snapshotAll(PathPattern pattern, Predicate<Entity> filter) {
+        List<Entity> copies = new ArrayList<>();
+        for (Entity entity : collect(pattern, filter)) {
+            copies.add(deepCopy(entity, null));
+        }
+        return copies;
+    }
+
+    /**
+     * Attaches entities from another shard to a container.
+     *
+     * @return The entities the destination rejected, e.g. because of a name conflict.
+     * @throws IllegalArgumentException If the destination is not a container.
+     */
+    synchronized List<Entity> attachAll(List<Entity> entities, String destinationPath) {
+        ContainerEntity destination = lookupContainer(destinationPath);
+        List<Entity> rejected = new ArrayList<>();
+        for (Entity entity : entities) {
+            // A rejected entity keeps its old parent, so it can still be restored
+            if (tryAttach(entity, destination)) {
+                indexTree(entity);
+            } else {
+                rejected.add(entity);
+            }
+        }
+        return rejected;
+    }
+
+    /**
+     * Puts entities returned by {@link #detachAll} back into their old parents.
+     *
+     * @throws IllegalStateException If an old parent meanwhile holds another entity of the same
+     *                               name. That entity is kept, and the remaining ones are still restored.
+     */
+    synchronized void restoreAll(List<Entity> entities) {
+        List<String> taken = new ArrayList<>();
+        for (Entity entity : entities) {
+            ContainerEntity parent = entity.getParent();
+            if (parent.hasChild(entity.getName())) {
+                taken.add(entity.getPath());
+                continue;
+            }
+            parent.addChild(entity);
+            indexTree(entity);
+        }
+        if (!taken.isEmpty()) {
+            throw new IllegalStateException("Cannot restore, paths were taken: " + taken);
+        }
+    }
+
+    private ContainerEntity lookupContainer(String path) {
+        Entity entity = lookup(path);
+        if (!(entity instanceof ContainerEntity)) {
+            throw new IllegalArgumentException("Destination is not a folder-like entity");
+        }
+        return (ContainerEntity) entity;
+    }
+
+    // Adds the entity to the destination unless the name is taken or the destination rejects it
+    private boolean tryAttach(Entity entity, ContainerEntity destination) {
+        if (destination.hasChild(entity.getName())) {
+            return false;
+        }
+        try {
+            destination.addChild(entity);
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+        entity.setParent(destination);
+        forEachTextFile(entity, file -> file.setContentStore(contentStore));
+        return true;
+    }
+
+    private static boolean isAncestorOrSelf(Entity entity, Entity descendant) {
+        for (Entity current = descendant; current != null; current = current.getParent()) {
+            if (current == entity) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private List<Entity> collect(PathPattern pattern, Predicate<Entity> filter) {
+        List<Entity> matches = new ArrayList<>();
+        walk(pattern, filter, entity -> {
+            matches.add(entity);
+            return false;
+        });
+        return matches;
+    }
+
+    /**
+     * Walks the entities below the drives that match a pattern, in one pass. Subtrees that cannot
+     * match are skipped, and literal pattern segments are looked up directly instead of scanned.
+     * A matched entity is handed to the visitor instead of being descended into; if the visitor
+     * returns true, the entity is removed from its container.
+     */
+    private void walk(PathPattern pattern, Predicate<Entity> filter, Predicate<Entity> visitor) {
+        BitSet start = pattern.start();
+        List<String> names = pattern.literalNames(start);
+        List<Drive> candidates = new ArrayList<>();
+        if (names == null) {
+            candidates.addAll(drives.values());
+        } else {
+            for (String name : names) {
+                Drive drive = drives.get(name);
+                if (drive != null) {
+                    candidates.add(drive);
+                }
+            }
+        }
+        for (Drive drive : candidates) {
+            BitSet states = pattern.step(start, drive.getName());
+            if (pattern.canDescend(states)) {
+                walkChildren(drive, states, pattern, filter, visitor);
+            }
+        }
+    }
+
+    private void walkChildren(ContainerEntity container, BitSet states, PathPattern pattern,
+                              Predicate<Entity> filter, Predicate<Entity> visitor) {
+        List<String> names = pattern.literalNames(states);
+        List<String> removed = new ArrayList<>();
+        if (names != null) {
+            for (String name : names) {
+                Entity child = container.getChild(name);
+                if (child != null && visit(child, states, pattern, filter, visitor)) {
+                    removed.add(name);
+                }
+            }
+        } else {
+            for (Entity child : container.getChildren()) {
+                if (visit(child, states, pattern, filter, visitor)) {
+                    removed.add(child.getName());
+                }
+            }
+        }
+        // Remove after iterating so the children map is not modified mid-walk
+        for (String name : removed) {
+            container.removeChild(name);
+        }
+    }
+
+    private boolean visit(Entity entity, BitSet parentStates, PathPattern pattern,
+                          Predicate<Entity> filter, Predicate<Entity> visitor) {
+        BitSet states = pattern.step(parentStates, entity.getName());
+        if (pattern.accepts(states) && filter.test(entity)) {
+            return visitor.test(entity);
+        }
+        if (entity instanceof ContainerEntity && pattern.canDescend(states)) {
+            walkChildren((ContainerEntity) entity, states, pattern, filter, visitor);
+        }
+        return false;
+    }
+
+    private void reindex(Entity entity) {
+        if (index != null) {
+            index.add(entity);
+        }
+    }
+
+    private void indexTree(Entity entity) {
+        if (index != null) {
+            index.addTree(entity);
+        }
+    }
+
+    private void unindexTree(Entity entity) {
+        if (index != null) {
+            index.removeTree(entity);
+        }
+    }
+
+    private void record(OperationType type, String path, String argument, long payloadSize) {
+        WorkloadRecorder current = recorder;
+        if (current != null) {
+            current.record(type, path, argument, payloadSize);
+        }
+    }
+
+    private void forEachTextFile(Entity entity, Consumer<TextFile> action) {
+        if (entity instanceof TextFile) {
+            action.accept((TextFile) entity);
+        } else if (entity instanceof ContainerEntity) {
+            for (Entity child : ((ContainerEntity) entity).getChildren()) {
+                forEachTextFile(child, action);
+            }
+        }
+    }
+
+    /**
+     * Removes an entity from its parent and returns it, so another shard can take ownership.
+     *
+     * @param path The path to the entity.
+     * @return The detached entity, still pointing at its old parent.
+     * @throws IllegalArgumentException If the path does not exist or refers to a drive.
+     */
+    synchronized Entity detach(String path) {
+        Entity entity = lookup(path);
+        if (entity.getParent() == null) {
+            throw new IllegalArgumentException("Cannot detach a drive: " + path);
+        }
+        entity.getParent().removeChild(entity.getName());
+        unindexTree(entity);
+        return entity;
+    }
+
+    /**
+     * Returns a deep copy of an entity that is not attached to any container.
+     *
+     * @param path The path to the entity.
+     * @return The detached copy.
+     * @throws IllegalArgumentException If the path does not exist.
+     */
+    synchronized Entity snapshot(String path) {
+        return deepCopy(lookup(path), null);
+    }
+
+    /**
+     * Adds an entity produced by {@link #detach(String)} or {@link #snapshot(String)} to a container.
+     *
+     * @param entity          The entity to add.
+     * @param destinationPath The path to the destination container.
+     * @throws IllegalArgumentException If the destination is not a container or already has that name.
+     */
+    synchronized void attach(Entity entity, String destinationPath) {
+        Entity dest = lookup(destinationPath);
+        if (!(dest instanceof ContainerEntity)) {
+            throw new IllegalArgumentException("Destination is not a folder-like entity");
+        }
+
+        ContainerEntity destination = (ContainerEntity) dest;
+        if (destination.hasChild(entity.getName())) {
+            throw new IllegalArgumentException("Path already exists at destination");
+        }
+
+        destination.addChild(entity);
+        entity.setParent(destination);
+        forEachTextFile(entity, file -> file.setContentStore(contentStore));
+        indexTree(entity);
+    }
+
     private Entity deepCopy(Entity original, ContainerEntity newParent) {
         if (original instanceof TextFile) {
             TextFile origFile = (TextFile) original;
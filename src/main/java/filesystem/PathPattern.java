@@ -0,0 +1,173 @@
+package proofpoint;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * A compiled glob over backslash-separated paths, e.g. "C\\logs\\**\\*.tmp".
+ *
+ * Each segment matches one path segment. Within a segment, {@code *} matches any run of
+ * characters and {@code ?} matches a single character. A segment that is exactly {@code **}
+ * matches zero or more whole segments.
+ *
+ * Matching is incremental so a tree walk can feed one name at a time: the walk keeps the set
+ * of pattern positions reached so far, and stops descending once that set is empty.
+ */
+public class PathPattern {
+    private static final String ANY_SEGMENTS = "**";
+
+    private final String glob;
+    // Per segment: null for "**", otherwise the segment regex
+    private final Pattern[] segments;
+    // Per segment: the name to look up directly, or null if the segment has wildcards
+    private final String[] literals;
+
+    private PathPattern(String glob, Pattern[] segments, String[] literals) {
+        this.glob = glob;
+        this.segments = segments;
+        this.literals = literals;
+    }
+
+    /**
+     * Compiles a glob.
+     *
+     * @param glob the glob, e.g. "C\\logs\\**\\*.tmp"
+     * @return the compiled pattern
+     * @throws IllegalArgumentException If the glob is empty or has an empty segment.
+     */
+    public static PathPattern compile(String glob) {
+        String[] parts = glob.split("\\\\", -1);
+        Pattern[] segments = new Pattern[parts.length];
+        String[] literals = new String[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            String part = parts[i];
+            if (part.isEmpty()) {
+                throw new IllegalArgumentException("Invalid pattern: " + glob);
+            }
+            if (part.equals(ANY_SEGMENTS)) {
+                continue;
+            }
+            if (part.indexOf('*') < 0 && part.indexOf('?') < 0) {
+                literals[i] = part;
+            }
+            segments[i] = Pattern.compile(toRegex(part));
+        }
+        return new PathPattern(glob, segments, literals);
+    }
+
+    private static String toRegex(String segment) {
+        StringBuilder regex = new StringBuilder();
+        StringBuilder literal = new StringBuilder();
+        for (char c : segment.toCharArray()) {
+            if (c == '*' || c == '?') {
+                if (literal.length() > 0) {
+                    regex.append(Pattern.quote(literal.toString()));
+                    literal.setLength(0);
+                }
+                regex.append(c == '*' ? ".*" : ".");
+            } else {
+                literal.append(c);
+            }
+        }
+        if (literal.length() > 0) {
+            regex.append(Pattern.quote(literal.toString()));
+        }
+        return regex.toString();
+    }
+
+    /**
+     * Tests a full path against this pattern.
+     *
+     * @param path a backslash-separated path
+     * @return true if the path matches
+     */
+    public boolean matches(String path) {
+        BitSet states = start();
+        for (String name : path.split("\\\\")) {
+            states = step(states, name);
+            if (states.isEmpty()) {
+                return false;
+            }
+        }
+        return accepts(states);
+    }
+
+    /**
+     * Returns the states before any segment has been consumed.
+     */
+    BitSet start() {
+        BitSet states = new BitSet(segments.length + 1);
+        states.set(0);
+        return closure(states);
+    }
+
+    /**
+     * Consumes one path segment.
+     *
+     * @param states the states before the segment
+     * @param name   the segment name
+     * @return the states after the segment; empty if no path through it can match
+     */
+    BitSet step(BitSet states, String name) {
+        BitSet next = new BitSet(segments.length + 1);
+        for (int i = states.nextSetBit(0); i >= 0 && i < segments.length; i = states.nextSetBit(i + 1)) {
+            if (segments[i] == null) {
+                next.set(i);
+            } else if (segments[i].matcher(name).matches()) {
+                next.set(i + 1);
+            }
+        }
+        return closure(next);
+    }
+
+    /**
+     * Returns whether the path consumed so far matches the whole pattern.
+     */
+    boolean accepts(BitSet states) {
+        return states.get(segments.length);
+    }
+
+    /**
+     * Returns whether any longer path could still match.
+     */
+    boolean canDescend(BitSet states) {
+        int first = states.nextSetBit(0);
+        return first >= 0 && first < segments.length;
+    }
+
+    /**
+     * Returns the only child names that can match next, so a walk can look them up directly
+     * instead of scanning every child.
+     *
+     * @return the names to look up, or null if some state needs a full scan
+     */
+    List<String> literalNames(BitSet states) {
+        List<String> names = new ArrayList<>();
+        for (int i = states.nextSetBit(0); i >= 0 && i < segments.length; i = states.nextSetBit(i + 1)) {
+            if (literals[i] == null) {
+                return null;
+            }
+            if (!names.contains(literals[i])) {
+                names.add(literals[i]);
+            }
+        }
+        return names;
+    }
+
+    // "**" may match zero segments, so reaching it also reaches the position after it
+    private BitSet closure(BitSet states) {
+        for (int i = states.nextSetBit(0); i >= 0 && i < segments.length; i = states.nextSetBit(i + 1)) {
+            if (segments[i] == null) {
+                states.set(i + 1);
+            }
+        }
+        return states;
+    }
+
+    @Override
+    public String toString() {
+        return glob;
+    }
+}
@@ -0,0 +1,163 @@
+package proofpoint;
+
+import proofpoint.entities.Entity;
+
+import java.time.LocalDateTime;
+import java.util.Comparator;
+
+/**
+ * An attribute query over entities, used with {@link FileSystem#find(String, Query)}.
+ *
+ * All criteria are combined with AND, and every bound is exclusive. For example, text files
+ * over 1 MB updated after {@code t}, largest first:
+ *
+ * <pre>
+ * new Query().type("textfile").sizeAbove(1 &lt;&lt; 20).updatedAfter(t).sortBy(Query.SortKey.SIZE, true).limit(10)
+ * </pre>
+ */
+public class Query {
+
+    /**
+     * The attribute results can be sorted by.
+     */
+    public enum SortKey {
+        NAME,
+        SIZE,
+        CREATED_AT,
+        UPDATED_AT
+    }
+
+    String type;
+    long minSize = Long.MIN_VALUE;
+    long maxSize = Long.MAX_VALUE;
+    LocalDateTime createdAfter;
+    LocalDateTime createdBefore;
+    LocalDateTime updatedAfter;
+    LocalDateTime updatedBefore;
+    SortKey sortKey;
+    boolean descending;
+    int limit = Integer.MAX_VALUE;
+
+    /**
+     * Only matches entities of the given type (drive, folder, textfile, zipfile).
+     */
+    public Query type(String type) {
+        this.type = type.toLowerCase();
+        return this;
+    }
+
+    /**
+     * Only matches entities whose size is greater than the given number of bytes.
+     */
+    public Query sizeAbove(long bytes) {
+        this.minSize = bytes == Long.MAX_VALUE ? bytes : bytes + 1;
+        return this;
+    }
+
+    /**
+     * Only matches entities whose size is less than the given number of bytes.
+     */
+    public Query sizeBelow(long bytes) {
+        this.maxSize = bytes == Long.MIN_VALUE ? bytes : bytes - 1;
+        return this;
+    }
+
+    /**
+     * Only matches entities created after the given time.
+     */
+    public Query createdAfter(LocalDateTime time) {
+        this.createdAfter = time;
+        return this;
+    }
+
+    /**
+     * Only matches entities created before the given time.
+     */
+    public Query createdBefore(LocalDateTime time) {
+        this.createdBefore = time;
+        return this;
+    }
+
+    /**
+     * Only matches entities last updated after the given time.
+     */
+    public Query updatedAfter(LocalDateTime time) {
+        this.updatedAfter = time;
+        return this;
+    }
+
+    /**
+     * Only matches entities last updated before the given time.
+     */
+    public Query updatedBefore(LocalDateTime time) {
+        this.updatedBefore = time;
+        return this;
+    }
+
+    /**
+     * Sorts the results by an attribute.
+     *
+     * @param key        the attribute to sort by
+     * @param descending true for largest or newest first
+     */
+    public Query sortBy(SortKey key, boolean descending) {
+        this.sortKey = key;
+        this.descending = descending;
+        return this;
+    }
+
+    /**
+     * Returns at most the given number of results, after sorting.
+     *
+     * @throws IllegalArgumentException If the limit is negative.
+     */
+    public Query limit(int limit) {
+        if (limit < 0) {
+            throw new IllegalArgumentException("Limit must not be negative: " + limit);
+        }
+        this.limit = limit;
+        return this;
+    }
+
+    /**
+     * Tests an entity against every criterion of this query.
+     *
+     * @param entity the entity to test
+     * @return true if the entity matches
+     */
+    public boolean matches(Entity entity) {
+        return (type == null || type.equals(entity.getType()))
+                && entity.getSize() >= minSize && entity.getSize() <= maxSize
+                && (createdAfter == null || entity.getCreatedAt().isAfter(createdAfter))
+                && (createdBefore == null || entity.getCreatedAt().isBefore(createdBefore))
+                && (updatedAfter == null || entity.getUpdatedAt().isAfter(updatedAfter))
+                && (updatedBefore == null || entity.getUpdatedAt().isBefore(updatedBefore));
+    }
+
+    /**
+     * Returns the result order, or null if the query is unsorted.
+     */
+    Comparator<Entity> comparator() {
+        if (sortKey == null) {
+            return null;
+        }
+        Comparator<Entity> comparator;
+        switch (sortKey) {
+            case NAME:
+                comparator = Comparator.comparing(Entity::getName);
+                break;
+            case SIZE:
+                comparator = Comparator.comparingLong(Entity::getSize);
+                break;
+            case CREATED_AT:
+                comparator = Comparator.comparing(Entity::getCreatedAt);
+                break;
+            case UPDATED_AT:
+                comparator = Comparator.comparing(Entity::getUpdatedAt);
+                break;
+            default:
+                throw new IllegalStateException("Unknown sort key: " + sortKey);
+        }
+        return descending ? comparator.reversed() : comparator;
+    }
+}
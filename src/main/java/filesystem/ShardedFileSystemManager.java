@@ -0,0 +1,439 @@
+package proofpoint;
+
+import proofpoint.entities.ContentStore;
+import proofpoint.entities.Entity;
+import proofpoint.workload.OperationType;
+import proofpoint.workload.WorkloadRecorder;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * A file system that partitions drives across shards, each with its own lock and content store.
+ *
+ * Each shard is a {@link FileSystemManager}, and each drive lives in exactly one shard.
+ * Operations are routed by the first path segment and run on the calling thread under the
+ * owning shard's lock, so operations on drives in different shards run in parallel without
+ * a hand-off to another thread. Each shard also has one thread of its own, used only to run
+ * the operations that visit every shard in parallel.
+ *
+ * Operations that span drives are coordinated explicitly:
+ * - search, find and deleteAll run on every shard and merge the results.
+ * - move and copy between shards take the source out (or a deep copy of it) on the source
+ *   shard, then hand it to the destination shard. A cross-shard move holds both shards' locks
+ *   throughout, so a failed move puts the entity back before anything else can take its place.
+ *   moveAll and copyAll do the same for each shard's matches, handing them to the destination
+ *   shard as one batch per shard.
+ *
+ * Drives are assigned to the shard that currently owns the fewest drives.
+ *
+ * As with {@link FileSystemManager}, entities returned by list, resolve and find are live:
+ * another thread working on the same drive may change them while they are being read.
+ */
+public class ShardedFileSystemManager implements FileSystem, AutoCloseable {
+    private static final class Shard {
+        // Position in the shard array, which is also the order shard locks are taken in
+        final int index;
+        final FileSystemManager fsm;
+        // Runs this shard's part of operations that visit every shard
+        final ExecutorService executor;
+        int driveCount;
+
+        Shard(int index, ContentStore contentStore) {
+            this.index = index;
+            this.fsm = new FileSystemManager(contentStore);
+            this.executor = Executors.newSingleThreadExecutor(task -> {
+                Thread thread = new Thread(task, "drive-shard-" + index);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    private final Shard[] shards;
+    // Routing table from drive name to the shard that owns it.
+    private final Map<String, Shard> routes = new ConcurrentHashMap<>();
+    private volatile WorkloadRecorder recorder;
+
+    /**
+     * Constructs a sharded file system that keeps all text file contents on the heap.
+     *
+     * @param shardCount the number of shards, typically the number of cores
+     */
+    public ShardedFileSystemManager(int shardCount) {
+        this(shardCount, -1);
+    }
+
+    /**
+     * Constructs a sharded file system in which every shard spills text file contents through
+     * its own content store, so shards never wait on each other's store. Each store gets an
+     * equal share of the heap budget.
+     *
+     * @param shardCount      the number of shards, typically the number of cores
+     * @param heapBudgetBytes the heap budget for text file contents across all shards,
+     *                        or a negative value to keep all contents on the heap
+     * @throws IllegalArgumentException If shardCount is less than 1.
+     */
+    public ShardedFileSystemManager(int shardCount, long heapBudgetBytes) {
+        if (shardCount < 1) {
+            throw new IllegalArgumentException("Shard count must be at least 1: " + shardCount);
+        }
+        shards = new Shard[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            shards[i] = new Shard(i, heapBudgetBytes < 0 ? null : new ContentStore(heapBudgetBytes / shardCount));
+        }
+    }
+
+    @Override
+    public void setRecorder(WorkloadRecorder recorder) {
+        this.recorder = recorder;
+    }
+
+    @Override
+    public void create(String type, String name, String parentPath) {
+        if (type.equalsIgnoreCase("drive")) {
+            record(OperationType.CREATE, name, type.toLowerCase(), 0);
+            Shard shard;
+            synchronized (routes) {
+                if (routes.containsKey(name)) {
+                    throw new IllegalArgumentException("Drive already exists: " + name);
+                }
+                shard = leastLoadedShard();
+                shard.driveCount++;
+                routes.put(name, shard);
+            }
+            shard.fsm.create(type, name, parentPath);
+        } else {
+            record(OperationType.CREATE, parentPath + "\\" + name, type.toLowerCase(), 0);
+            Shard shard = route(parentPath);
+            shard.fsm.create(type, name, parentPath);
+        }
+    }
+
+    @Override
+    public void delete(String path) {
+        record(OperationType.DELETE, path, null, 0);
+        Shard shard = route(path);
+        shard.fsm.delete(path);
+        if (isDrivePath(path)) {
+            synchronized (routes) {
+                routes.remove(path);
+                shard.driveCount--;
+            }
+        }
+    }
+
+    @Override
+    public void move(String sourcePath, String destinationPath) {
+        record(OperationType.MOVE, sourcePath, destinationPath, 0);
+        Shard source = route(sourcePath);
+        Shard destination = route(destinationPath);
+        if (source == destination) {
+            source.fsm.move(sourcePath, destinationPath);
+            return;
+        }
+
+        lockBoth(source, destination, () -> {
+            Entity moved = source.fsm.detach(sourcePath);
+            try {
+                destination.fsm.attach(moved, destinationPath);
+            } catch (RuntimeException e) {
+                // Nothing else can touch either shard meanwhile, so the old place is still free
+                String originalParent = sourcePath.substring(0, sourcePath.lastIndexOf('\\'));
+                source.fsm.attach(moved, originalParent);
+                throw e;
+            }
+            return null;
+        });
+    }
+
+    @Override
+    public void copy(String sourcePath, String destinationPath) {
+        record(OperationType.COPY, sourcePath, destinationPath, 0);
+        Shard source = route(sourcePath);
+        Shard destination = route(destinationPath);
+        if (source == destination) {
+            source.fsm.copy(sourcePath, destinationPath);
+            return;
+        }
+
+        Entity copied = source.fsm.snapshot(sourcePath);
+        destination.fsm.attach(copied, destinationPath);
+    }
+
+    @Override
+    public List<Entity> list(String path) {
+        record(OperationType.LIST, path, null, 0);
+        Shard shard = route(path);
+        return shard.fsm.list(path);
+    }
+
+    @Override
+    public void writeToFile(String path, String content) {
+        record(OperationType.WRITE, path, null, content.length());
+        Shard shard = route(path);
+        shard.fsm.writeToFile(path, content);
+    }
+
+    @Override
+    public Entity resolve(String path) {
+        record(OperationType.RESOLVE, path, null, 0);
+        Shard shard = route(path);
+        return shard.fsm.resolve(path);
+    }
+
+    @Override
+    public List<String> search(String name) {
+        record(OperationType.SEARCH, null, name, 0);
+        List<Future<List<String>>> pending = new ArrayList<>();
+        for (Shard shard : shards) {
+            pending.add(shard.executor.submit(() -> shard.fsm.search(name)));
+        }
+        List<String> result = new ArrayList<>();
+        for (Future<List<String>> future : pending) {
+            result.addAll(await(future));
+        }
+        return result;
+    }
+
+    @Override
+    public void rename(String path, String newName) {
+        record(OperationType.RENAME, path, newName, 0);
+        Shard shard = route(path);
+        if (!isDrivePath(path)) {
+            shard.fsm.rename(path, newName);
+            return;
+        }
+
+        synchronized (routes) {
+            if (routes.containsKey(newName)) {
+                throw new IllegalArgumentException("Drive with name already exists: " + newName);
+            }
+            shard.fsm.rename(path, newName);
+            routes.remove(path);
+            routes.put(newName, shard);
+        }
+    }
+
+    @Override
+    public BulkResult deleteAll(String pattern) {
+        return deleteAll(pattern, ANY);
+    }
+
+    @Override
+    public BulkResult deleteAll(String pattern, Predicate<Entity> filter) {
+        record(filter == ANY ? OperationType.DELETE_ALL : OperationType.DELETE_ALL_FILTERED, null, pattern, 0);
+        List<Future<BulkResult>> pending = new ArrayList<>();
+        for (Shard shard : shards) {
+            pending.add(shard.executor.submit(() -> shard.fsm.deleteAll(pattern, filter)));
+        }
+        BulkResult result = new BulkResult(0, 0);
+        for (Future<BulkResult> future : pending) {
+            result = result.plus(await(future));
+        }
+        return result;
+    }
+
+    @Override
+    public BulkResult moveAll(String pattern, String destinationPath) {
+        return moveAll(pattern, destinationPath, ANY);
+    }
+
+    @Override
+    public BulkResult moveAll(String pattern, String destinationPath, Predicate<Entity> filter) {
+        record(filter == ANY ? OperationType.MOVE_ALL : OperationType.MOVE_ALL_FILTERED, destinationPath, pattern, 0);
+        PathPattern compiled = PathPattern.compile(pattern);
+        Shard destination = route(destinationPath);
+        BulkResult result = destination.fsm.moveAll(pattern, destinationPath, filter);
+
+        for (Shard shard : shards) {
+            if (shard == destination) {
+                continue;
+            }
+            BulkResult moved = lockBoth(shard, destination, () -> {
+                List<Entity> detached = shard.fsm.detachAll(compiled, filter);
+                if (detached.isEmpty()) {
+                    return new BulkResult(0, 0);
+                }
+                List<Entity> rejected;
+                try {
+                    rejected = destination.fsm.attachAll(detached, destinationPath);
+                } catch (RuntimeException e) {
+                    shard.fsm.restoreAll(detached);
+                    throw e;
+                }
+                if (!rejected.isEmpty()) {
+                    shard.fsm.restoreAll(rejected);
+                }
+                return new BulkResult(detached.size() - rejected.size(), rejected.size());
+            });
+            result = result.plus(moved);
+        }
+        return result;
+    }
+
+    @Override
+    public BulkResult copyAll(String pattern, String destinationPath) {
+        return copyAll(pattern, destinationPath, ANY);
+    }
+
+    @Override
+    public BulkResult copyAll(String pattern, String destinationPath, Predicate<Entity> filter) {
+        record(filter == ANY ? OperationType.COPY_ALL : OperationType.COPY_ALL_FILTERED, destinationPath, pattern, 0);
+        PathPattern compiled = PathPattern.compile(pattern);
+        Shard destination = route(destinationPath);
+        // Snapshot every shard before attaching anything, so copies are never copied again
+        List<Entity> copies = new ArrayList<>();
+        for (Shard shard : shards) {
+            if (shard != destination) {
+                copies.addAll(shard.fsm.snapshotAll(compiled, filter));
+            }
+        }
+        BulkResult result = destination.fsm.copyAll(pattern, destinationPath, filter);
+        if (!copies.isEmpty()) {
+            List<Entity> rejected = destination.fsm.attachAll(copies, destinationPath);
+            result = result.plus(new BulkResult(copies.size() - rejected.size(), rejected.size()));
+        }
+        return result;
+    }
+
+    @Override
+    public List<Entity> find(String subtreePath, Query query) {
+        if (subtreePath != null) {
+            Shard shard = route(subtreePath);
+            return shard.fsm.find(subtreePath, query);
+        }
+
+        List<Future<List<Entity>>> pending = new ArrayList<>();
+        for (Shard shard : shards) {
+            pending.add(shard.executor.submit(() -> shard.fsm.find(null, query)));
+        }
+        // Each shard already applied the sort and limit, so merge and apply them once more
+        List<Entity> result = new ArrayList<>();
+        for (Future<List<Entity>> future : pending) {
+            result.addAll(await(future));
+        }
+        Comparator<Entity> comparator = query.comparator();
+        if (comparator != null) {
+            result.sort(comparator);
+        }
+        return result.size() > query.limit ? new ArrayList<>(result.subList(0, query.limit)) : result;
+    }
+
+    @Override
+    public void setIndexingEnabled(boolean enabled) {
+        List<Future<?>> pending = new ArrayList<>();
+        for (Shard shard : shards) {
+            pending.add(shard.executor.submit(() -> shard.fsm.setIndexingEnabled(enabled)));
+        }
+        for (Future<?> future : pending) {
+            await(future);
+        }
+    }
+
+    /**
+     * Returns the number of shards.
+     *
+     * @return the shard count
+     */
+    public int getShardCount() {
+        return shards.length;
+    }
+
+    /**
+     * Stops the shard threads and closes the shards' content stores.
+     * Operations that visit every shard are rejected afterwards.
+     */
+    @Override
+    public void close() {
+        for (Shard shard : shards) {
+            shard.executor.shutdown();
+        }
+        for (Shard shard : shards) {
+            ContentStore store = shard.fsm.getContentStore();
+            if (store != null) {
+                try {
+                    store.close();
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Error closing content store", e);
+                }
+            }
+        }
+    }
+
+    private Shard route(String path) {
+        int end = path.indexOf('\\');
+        String driveName = end < 0 ? path : path.substring(0, end);
+        if (driveName.isEmpty()) {
+            throw new IllegalArgumentException("Invalid path: " + path);
+        }
+        Shard shard = routes.get(driveName);
+        if (shard == null) {
+            throw new IllegalArgumentException("Drive not found: " + driveName);
+        }
+        return shard;
+    }
+
+    private Shard leastLoadedShard() {
+        Shard best = shards[0];
+        for (Shard shard : shards) {
+            if (shard.driveCount < best.driveCount) {
+                best = shard;
+            }
+        }
+        return best;
+    }
+
+    // Runs an action holding the locks of two different shards, so it is atomic on both. The locks
+    // are always taken in shard order, so two operations locking the same pair cannot deadlock.
+    private static <T> T lockBoth(Shard a, Shard b, Supplier<T> action) {
+        Shard first = a.index < b.index ? a : b;
+        Shard second = first == a ? b : a;
+        synchronized (first.fsm) {
+            synchronized (second.fsm) {
+                return action.get();
+            }
+        }
+    }
+
+    private static boolean isDrivePath(String path) {
+        return path.indexOf('\\') < 0;
+    }
+
+    // Waits for a shard task and rethrows its failure on the calling thread
+    private static <T> T await(Future<T> future) {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException("Shard task failed", cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for shard", e);
+        }
+    }
+
+    private void record(OperationType type, String path, String argument, long payloadSize) {
+        WorkloadRecorder current = recorder;
+        if (current != null) {
+            current.record(type, path, argument, payloadSize);
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package proofpoint;
+
+import proofpoint.entities.Entity;
+
+/**
+ * One difference between two file system trees, as reported by {@link TreeDiff}.
+ */
+public class TreeChange {
+
+    /**
+     * How an entity differs between the base tree and the target tree.
+     */
+    public enum Kind {
+        // Present only in the target tree
+        ADDED,
+        // Present only in the base tree
+        REMOVED,
+        // A text file present in both trees with different content
+        MODIFIED
+    }
+
+    private final Kind kind;
+    private final String path;
+    private final Entity entity;
+
+    /**
+     * Constructs a change.
+     *
+     * @param kind   how the entity differs
+     * @param path   the path of the entity, the same in both trees
+     * @param entity the entity from the target tree, or from the base tree when removed
+     */
+    public TreeChange(Kind kind, String path, Entity entity) {
+        this.kind = kind;
+        this.path = path;
+        this.entity = entity;
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public Entity getEntity() {
+        return entity;
+    }
+
+    @Override
+    public String toString() {
+        return kind + " " + path;
+    }
+}
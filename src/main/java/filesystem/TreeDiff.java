@@ -0,0 +1,131 @@
+package proofpoint;
+
+import proofpoint.entities.ContainerEntity;
+import proofpoint.entities.Drive;
+import proofpoint.entities.Entity;
+import proofpoint.entities.TextFile;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compares and synchronizes file system trees using the entities' Merkle hashes.
+ *
+ * Subtrees with equal hashes are skipped without being walked, so the cost of a diff or
+ * sync depends on how much changed rather than on the size of the trees. Neither tree
+ * may be modified by another thread while it is being compared.
+ */
+public final class TreeDiff {
+
+    private TreeDiff() {
+    }
+
+    /**
+     * Lists the changes that turn the base file system into the target file system.
+     *
+     * @param base   the file system to compare from, e.g. a replica
+     * @param target the file system to compare to, e.g. the primary
+     * @return the changes, with removals listed before additions at the same path
+     */
+    public static List<TreeChange> diff(FileSystemManager base, FileSystemManager target) {
+        Map<String, Drive> baseDrives = new HashMap<>();
+        for (Drive drive : base.getDrives()) {
+            baseDrives.put(drive.getName(), drive);
+        }
+
+        List<TreeChange> changes = new ArrayList<>();
+        for (Drive drive : target.getDrives()) {
+            Drive baseDrive = baseDrives.remove(drive.getName());
+            if (baseDrive == null) {
+                changes.add(new TreeChange(TreeChange.Kind.ADDED, drive.getPath(), drive));
+            } else {
+                diff(baseDrive, drive, changes);
+            }
+        }
+        for (Drive drive : baseDrives.values()) {
+            changes.add(new TreeChange(TreeChange.Kind.REMOVED, drive.getPath(), drive));
+        }
+        return changes;
+    }
+
+    /**
+     * Lists the changes that turn one subtree into another with the same name.
+     *
+     * @param base   the subtree to compare from
+     * @param target the subtree to compare to
+     * @return the changes, with removals listed before additions at the same path
+     */
+    public static List<TreeChange> diff(Entity base, Entity target) {
+        List<TreeChange> changes = new ArrayList<>();
+        diff(base, target, changes);
+        return changes;
+    }
+
+    private static void diff(Entity base, Entity target, List<TreeChange> changes) {
+        if (base.getHash() == target.getHash()) {
+            return;
+        }
+        if (!base.getType().equals(target.getType())) {
+            changes.add(new TreeChange(TreeChange.Kind.REMOVED, base.getPath(), base));
+            changes.add(new TreeChange(TreeChange.Kind.ADDED, target.getPath(), target));
+            return;
+        }
+        if (target instanceof TextFile) {
+            changes.add(new TreeChange(TreeChange.Kind.MODIFIED, target.getPath(), target));
+            return;
+        }
+
+        ContainerEntity baseContainer = (ContainerEntity) base;
+        ContainerEntity targetContainer = (ContainerEntity) target;
+        for (Entity child : baseContainer.getChildren()) {
+            Entity other = targetContainer.getChild(child.getName());
+            if (other == null) {
+                changes.add(new TreeChange(TreeChange.Kind.REMOVED, child.getPath(), child));
+            } else {
+                diff(child, other, changes);
+            }
+        }
+        for (Entity child : targetContainer.getChildren()) {
+            if (!baseContainer.hasChild(child.getName())) {
+                changes.add(new TreeChange(TreeChange.Kind.ADDED, child.getPath(), child));
+            }
+        }
+    }
+
+    /**
+     * Brings a replica up to date with a source by applying only the changed entities.
+     *
+     * @param source  the file system to copy changes from
+     * @param replica the file system to update
+     * @return the changes that were applied to the replica
+     */
+    public static List<TreeChange> sync(FileSystemManager source, FileSystemManager replica) {
+        List<TreeChange> changes = diff(replica, source);
+        for (TreeChange change : changes) {
+            String path = change.getPath();
+            switch (change.getKind()) {
+                case REMOVED:
+                    replica.delete(path);
+                    break;
+                case MODIFIED:
+                    replica.writeToFile(path, ((TextFile) change.getEntity()).getContent());
+                    break;
+                case ADDED:
+                    if (change.getEntity() instanceof Drive) {
+                        replica.create("drive", path, "");
+                        for (Entity child : ((Drive) change.getEntity()).getChildren()) {
+                            replica.attach(source.snapshot(child.getPath()), path);
+                        }
+                    } else {
+                        replica.attach(source.snapshot(path), path.substring(0, path.lastIndexOf('\\')));
+                    }
+                    break;
+                default:
+                    throw new IllegalStateException("Unknown change: " + change.getKind());
+            }
+        }
+        return changes;
+    }
+}
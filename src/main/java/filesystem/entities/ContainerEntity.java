@@ -1,5 +1,7 @@
 package proofpoint.entities;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 import java.util.Collection;
 import java.util.HashMap;
@@ -14,12 +16,16 @@ import java.util.Map;
  * - Zip files
  *
  * It manages a map of children by name to enforce unique naming under a parent.
+ * Its hash covers the children through the sum of their hashes, so adding, removing or
+ * changing one child updates it in constant time regardless of how many children there are.
  */
 public abstract class ContainerEntity extends Entity implements Serializable {
     private static final long serialVersionUID = 1L;
 
     // Stores child entities keyed by name for fast lookup
     protected Map<String, Entity> children = new HashMap<>();
+    // Sum of the children's hashes, independent of iteration order
+    private transient long childHashSum;
 
     /**
      * Constructs a new container entity.
@@ -29,6 +35,7 @@ public abstract class ContainerEntity extends Entity implements Serializable {
      */
     public ContainerEntity(String name, ContainerEntity parent) {
         super(name, parent);
+        rehash();
     }
 
     /**
@@ -37,7 +44,12 @@ public abstract class ContainerEntity extends Entity implements Serializable {
      * @param child The entity to add.
      */
     public void addChild(Entity child) {
-        children.put(child.getName(), child);
+        Entity replaced = children.put(child.getName(), child);
+        if (replaced != null) {
+            childHashSum -= replaced.getHash();
+        }
+        childHashSum += child.getHash();
+        rehash();
     }
 
     /**
@@ -46,7 +58,11 @@ public abstract class ContainerEntity extends Entity implements Serializable {
      * @param name The name of the child to remove.
      */
     public void removeChild(String name) {
-        children.remove(name);
+        Entity removed = children.remove(name);
+        if (removed != null) {
+            childHashSum -= removed.getHash();
+            rehash();
+        }
     }
 
     /**
@@ -77,4 +93,29 @@ public abstract class ContainerEntity extends Entity implements Serializable {
     public Collection<Entity> getChildren() {
         return children.values();
     }
+
+    /**
+     * Updates this container's hash after one of its children's hashes changed.
+     *
+     * @param oldHash the child's previous hash
+     * @param newHash the child's current hash
+     */
+    void childHashChanged(long oldHash, long newHash) {
+        childHashSum += newHash - oldHash;
+        rehash();
+    }
+
+    @Override
+    protected long computeHash() {
+        return combine(getType(), name, childHashSum);
+    }
+
+    // Streams are rooted at the drives, so the children are fully read and rehashed by now
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        for (Entity child : children.values()) {
+            childHashSum += child.getHash();
+        }
+        hash = computeHash();
+    }
 }
@@ -0,0 +1,563 @@
+package proofpoint.entities;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps text file contents within a heap budget.
+ *
+ * Contents are tracked in least-recently-used order. When the resident total goes over
+ * the budget, a background evictor thread drops the coldest contents from the heap,
+ * appending them to a local spill file first if the file does not already hold them.
+ * A later call to {@link TextFile#getContent()} reads them back with a positional read
+ * and makes them resident again.
+ *
+ * Writers and readers never wait for spill writes: the store's lock only guards the
+ * bookkeeping, and all file writes happen on the evictor thread outside it. As a result
+ * the budget is soft, and resident bytes can briefly exceed it while the evictor catches up.
+ *
+ * Content that is faulted back in keeps its place in the spill file, so evicting it again
+ * costs no write. Rewritten or removed content leaves a dead region behind; once dead bytes
+ * outweigh live ones, the evictor compacts the file into a fresh one.
+ */
+public class ContentStore implements Closeable {
+    // Dead regions smaller than this are not worth a compaction
+    private static final long MIN_COMPACTION_BYTES = 64 * 1024;
+
+    // Where a file's content lives in the spill file
+    private static final class Location {
+        final long offset;
+        final int length;
+
+        Location(long offset, int length) {
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+
+    private final long heapBudgetBytes;
+    private final Path spillPath;
+    private FileChannel spillFile;
+    // Only advanced by the evictor thread
+    private long spillEnd;
+
+    // Resident files in access order (eldest first) mapped to their accounted heap bytes
+    private final LinkedHashMap<TextFile, Long> resident = new LinkedHashMap<>(16, 0.75f, true);
+    // Files whose current content is in the spill file, whether or not it is also resident
+    private final Map<TextFile, Location> locations = new HashMap<>();
+
+    private long residentBytes;
+    private long liveSpillBytes;
+    private long deadSpillBytes;
+    private long spillCount;
+    private long spilledBytes;
+    private long faultCount;
+    private long faultNanos;
+    private long compactionCount;
+    private IOException spillFailure;
+    private boolean closed;
+
+    private final Thread evictor;
+
+    /**
+     * Constructs a store that spills to a temporary file deleted on close.
+     *
+     * @param heapBudgetBytes the maximum number of content bytes kept on the heap
+     */
+    public ContentStore(long heapBudgetBytes) {
+        this(heapBudgetBytes, createTempSpillFile());
+    }
+
+    /**
+     * Constructs a store that spills to the given file, truncating it first.
+     *
+     * @param heapBudgetBytes the maximum number of content bytes kept on the heap
+     * @param spillPath       the file used for evicted contents
+     * @throws IllegalArgumentException If the budget is negative.
+     */
+    public ContentStore(long heapBudgetBytes, Path spillPath) {
+        if (heapBudgetBytes < 0) {
+            throw new IllegalArgumentException("Heap budget must not be negative: " + heapBudgetBytes);
+        }
+        this.heapBudgetBytes = heapBudgetBytes;
+        this.spillPath = spillPath;
+        this.spillFile = openSpillFile(spillPath);
+        this.evictor = new Thread(this::evictLoop, "content-store-evictor");
+        evictor.setDaemon(true);
+        evictor.start();
+    }
+
+    private static Path createTempSpillFile() {
+        try {
+            Path path = Files.createTempFile("filesystem-spill", ".dat");
+            path.toFile().deleteOnExit();
+            return path;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error creating spill file", e);
+        }
+    }
+
+    private static FileChannel openSpillFile(Path path) {
+        try {
+            return FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error opening spill file: " + path, e);
+        }
+    }
+
+    /**
+     * Replaces a file's content and wakes the evictor if over budget. Never touches the disk.
+     *
+     * @param file    the file being written
+     * @param content the new content
+     */
+    synchronized void onWrite(TextFile file, String content) {
+        dropLocation(file);
+        file.restoreContent(content);
+        makeResident(file, content);
+    }
+
+    /**
+     * Records a read of resident content so it moves to the most-recently-used end.
+     *
+     * @param file the file that was read
+     */
+    synchronized void onRead(TextFile file) {
+        resident.get(file);
+    }
+
+    /**
+     * Reads a spilled file's content back onto the heap. The disk read happens outside the lock.
+     *
+     * @param file the file whose content was spilled
+     * @return the file's content
+     */
+    String fault(TextFile file) {
+        long start = System.nanoTime();
+        while (true) {
+            FileChannel channel;
+            Location location;
+            synchronized (this) {
+                String content = file.residentContent();
+                if (content != null) {
+                    resident.get(file);
+                    return content;
+                }
+                location = locationOf(file);
+                channel = spillFile;
+            }
+
+            String content = read(channel, location);
+            if (content == null) {
+                // The file was compacted into a new spill file mid-read; look it up again
+                continue;
+            }
+
+            synchronized (this) {
+                String current = file.residentContent();
+                if (current != null) {
+                    // Written or faulted in by another thread meanwhile
+                    resident.get(file);
+                    return current;
+                }
+                if (locations.get(file) != location) {
+                    continue;
+                }
+                file.restoreContent(content);
+                makeResident(file, content);
+                faultCount++;
+                faultNanos += System.nanoTime() - start;
+                return content;
+            }
+        }
+    }
+
+    /**
+     * Reads a file's content without changing its residency, used when serializing.
+     *
+     * @param file the file to read
+     * @return the file's content
+     */
+    String peek(TextFile file) {
+        while (true) {
+            FileChannel channel;
+            Location location;
+            synchronized (this) {
+                String content = file.residentContent();
+                if (content != null) {
+                    return content;
+                }
+                location = locationOf(file);
+                channel = spillFile;
+            }
+            String content = read(channel, location);
+            if (content != null) {
+                return content;
+            }
+        }
+    }
+
+    /**
+     * Stops tracking a file without reading its content, e.g. after it was deleted.
+     * The file's spilled content, if any, can no longer be read.
+     *
+     * @param file the file to forget
+     */
+    synchronized void remove(TextFile file) {
+        Long bytes = resident.remove(file);
+        if (bytes != null) {
+            residentBytes -= bytes;
+        }
+        dropLocation(file);
+    }
+
+    /**
+     * Blocks until the evictor has brought resident bytes back within the budget.
+     *
+     * @throws UncheckedIOException If spilling failed.
+     */
+    public synchronized void flush() {
+        try {
+            while (residentBytes > heapBudgetBytes && spillFailure == null && !closed) {
+                wait();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for eviction", e);
+        }
+        if (spillFailure != null) {
+            throw new UncheckedIOException("Error writing spill file", spillFailure);
+        }
+    }
+
+    private Location locationOf(TextFile file) {
+        Location location = locations.get(file);
+        if (location == null) {
+            throw new IllegalStateException("Content not found in spill file: " + file.getPath());
+        }
+        return location;
+    }
+
+    private void makeResident(TextFile file, String content) {
+        long bytes = heapBytes(content);
+        Long previous = resident.put(file, bytes);
+        residentBytes += bytes - (previous == null ? 0 : previous);
+        if (residentBytes > heapBudgetBytes) {
+            notifyAll();
+        }
+    }
+
+    private void dropLocation(TextFile file) {
+        Location location = locations.remove(file);
+        if (location != null) {
+            liveSpillBytes -= location.length;
+            deadSpillBytes += location.length;
+        }
+    }
+
+    private void evictLoop() {
+        while (true) {
+            List<TextFile> victims = new ArrayList<>();
+            List<String> contents = new ArrayList<>();
+            List<Boolean> needsWrite = new ArrayList<>();
+            FileChannel channel;
+            synchronized (this) {
+                try {
+                    while (!closed && residentBytes <= heapBudgetBytes) {
+                        wait();
+                    }
+                } catch (InterruptedException e) {
+                    return;
+                }
+                if (closed) {
+                    return;
+                }
+                long remaining = residentBytes;
+                for (Map.Entry<TextFile, Long> entry : resident.entrySet()) {
+                    if (remaining <= heapBudgetBytes) {
+                        break;
+                    }
+                    victims.add(entry.getKey());
+                    contents.add(entry.getKey().residentContent());
+                    needsWrite.add(!locations.containsKey(entry.getKey()));
+                    remaining -= entry.getValue();
+                }
+                channel = spillFile;
+            }
+
+            // Append contents the spill file does not hold yet, without holding the lock
+            Location[] written = new Location[victims.size()];
+            try {
+                for (int i = 0; i < victims.size(); i++) {
+                    if (needsWrite.get(i)) {
+                        written[i] = append(channel, contents.get(i));
+                    }
+                }
+            } catch (IOException e) {
+                synchronized (this) {
+                    spillFailure = e;
+                    notifyAll();
+                }
+                return;
+            }
+
+            synchronized (this) {
+                for (int i = 0; i < victims.size(); i++) {
+                    commitEviction(victims.get(i), contents.get(i), written[i]);
+                }
+                notifyAll();
+            }
+            compactIfWorthwhile();
+        }
+    }
+
+    // Drops a victim from the heap unless it was rewritten, read back or removed meanwhile
+    private void commitEviction(TextFile file, String content, Location written) {
+        boolean unchanged = resident.containsKey(file) && file.residentContent() == content;
+        if (written != null) {
+            if (unchanged && !locations.containsKey(file)) {
+                locations.put(file, written);
+                liveSpillBytes += written.length;
+                spillCount++;
+                spilledBytes += written.length;
+            } else {
+                deadSpillBytes += written.length;
+                return;
+            }
+        } else if (!locations.containsKey(file)) {
+            // Rewritten since it was picked as a clean victim
+            return;
+        }
+        if (unchanged) {
+            file.releaseContent();
+            residentBytes -= resident.remove(file);
+        }
+    }
+
+    private Location append(FileChannel channel, String content) throws IOException {
+        byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+        long offset = spillEnd;
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        long position = offset;
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+        spillEnd += bytes.length;
+        return new Location(offset, bytes.length);
+    }
+
+    // Rewrites the live regions into a fresh spill file once dead bytes outweigh live ones
+    private void compactIfWorthwhile() {
+        Map<TextFile, Location> live;
+        FileChannel old;
+        synchronized (this) {
+            if (deadSpillBytes < MIN_COMPACTION_BYTES || deadSpillBytes <= liveSpillBytes) {
+                return;
+            }
+            live = new HashMap<>(locations);
+            old = spillFile;
+        }
+
+        Path compacted = spillPath.resolveSibling(spillPath.getFileName() + ".compact");
+        FileChannel fresh = openSpillFile(compacted);
+        Map<TextFile, Location> moved = new HashMap<>();
+        long end = 0;
+        try {
+            for (Map.Entry<TextFile, Location> entry : live.entrySet()) {
+                Location location = entry.getValue();
+                ByteBuffer buffer = readBytes(old, location);
+                buffer.flip();
+                long position = end;
+                while (buffer.hasRemaining()) {
+                    position += fresh.write(buffer, position);
+                }
+                moved.put(entry.getKey(), new Location(end, location.length));
+                end += location.length;
+            }
+            Files.move(compacted, spillPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            try {
+                fresh.close();
+                Files.deleteIfExists(compacted);
+            } catch (IOException suppressed) {
+                e.addSuppressed(suppressed);
+            }
+            synchronized (this) {
+                spillFailure = e;
+                notifyAll();
+            }
+            return;
+        }
+
+        synchronized (this) {
+            long dead = 0;
+            for (Map.Entry<TextFile, Location> entry : moved.entrySet()) {
+                if (locations.get(entry.getKey()) == live.get(entry.getKey())) {
+                    locations.put(entry.getKey(), entry.getValue());
+                } else {
+                    dead += entry.getValue().length;
+                }
+            }
+            spillFile = fresh;
+            spillEnd = end;
+            deadSpillBytes = dead;
+            compactionCount++;
+        }
+        try {
+            // Readers still on the old file see it closed and retry against the new one
+            old.close();
+        } catch (IOException ignored) {
+            // The old file is already unlinked; nothing is lost if closing it fails
+        }
+    }
+
+    /**
+     * Reads content at a location.
+     *
+     * @return the content, or null if the channel was closed by a compaction and the read must be retried
+     */
+    private String read(FileChannel channel, Location location) {
+        try {
+            return new String(readBytes(channel, location).array(), StandardCharsets.UTF_8);
+        } catch (ClosedChannelException e) {
+            synchronized (this) {
+                if (closed) {
+                    throw new IllegalStateException("Content store is closed", e);
+                }
+            }
+            return null;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error reading spill file", e);
+        }
+    }
+
+    private static ByteBuffer readBytes(FileChannel channel, Location location) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(location.length);
+        long position = location.offset;
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new IOException("Unexpected end of spill file");
+            }
+            position += read;
+        }
+        return buffer;
+    }
+
+    // Strings are UTF-16 on the heap, so account two bytes per char
+    private static long heapBytes(String content) {
+        return 2L * content.length();
+    }
+
+    public long getHeapBudgetBytes() {
+        return heapBudgetBytes;
+    }
+
+    /**
+     * Returns the heap bytes currently held by resident contents.
+     *
+     * @return the resident byte total
+     */
+    public synchronized long getResidentBytes() {
+        return residentBytes;
+    }
+
+    /**
+     * Returns how many times content has been written to the spill file.
+     *
+     * @return the spill count
+     */
+    public synchronized long getSpillCount() {
+        return spillCount;
+    }
+
+    /**
+     * Returns the total number of bytes written to the spill file, excluding compactions.
+     *
+     * @return the spilled byte total
+     */
+    public synchronized long getSpilledBytes() {
+        return spilledBytes;
+    }
+
+    /**
+     * Returns the current size of the spill file.
+     *
+     * @return the spill file length in bytes, live and dead
+     */
+    public synchronized long getSpillFileBytes() {
+        return liveSpillBytes + deadSpillBytes;
+    }
+
+    /**
+     * Returns the bytes in the spill file that belong to rewritten or removed contents.
+     *
+     * @return the dead byte total
+     */
+    public synchronized long getDeadSpillBytes() {
+        return deadSpillBytes;
+    }
+
+    /**
+     * Returns how many times the spill file has been compacted.
+     *
+     * @return the compaction count
+     */
+    public synchronized long getCompactionCount() {
+        return compactionCount;
+    }
+
+    /**
+     * Returns how many reads had to fault content back in from disk.
+     *
+     * @return the fault count
+     */
+    public synchronized long getFaultCount() {
+        return faultCount;
+    }
+
+    /**
+     * Returns the mean time spent faulting content back in.
+     *
+     * @return the average fault latency in nanoseconds, or 0 if nothing was faulted
+     */
+    public synchronized long getAverageFaultNanos() {
+        return faultCount == 0 ? 0 : faultNanos / faultCount;
+    }
+
+    /**
+     * Stops the evictor, then closes and deletes the spill file.
+     * Spilled contents can no longer be read afterwards.
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            closed = true;
+            notifyAll();
+        }
+        try {
+            evictor.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this) {
+            spillFile.close();
+        }
+        Files.deleteIfExists(spillPath);
+    }
+}
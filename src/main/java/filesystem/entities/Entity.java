@@ -8,6 +8,12 @@ import java.time.LocalDateTime;
  *
  * All file system elements (Drive, Folder, TextFile, ZipFile) extend this class.
  * It defines common properties like name, parent, and path.
+ *
+ * Every entity also keeps a Merkle hash covering its type, name and everything below it.
+ * Subclasses recompute it with {@link #rehash()} whenever their hashed state changes,
+ * and the change is pushed up through the parents to the drive, so two subtrees with
+ * equal hashes can be treated as identical without walking them. Hashes are not serialized;
+ * each entity recomputes its own from its deserialized state, after its children.
  */
 public abstract class Entity implements Serializable {
     private static final long serialVersionUID = 1L;
@@ -18,6 +24,7 @@ public abstract class Entity implements Serializable {
     protected long size;
     protected final LocalDateTime createdAt;
     protected LocalDateTime updatedAt;
+    protected transient long hash;
 
     /**
      * Constructs a new Entity with the given name and parent.
@@ -35,6 +42,7 @@ public abstract class Entity implements Serializable {
 
     public void setName(String name) {
         this.name = name;
+        rehash();
     }
 
     /**
@@ -87,6 +95,61 @@ public abstract class Entity implements Serializable {
         return updatedAt;
     }
 
+    /**
+     * Returns the Merkle hash of this entity and its descendants.
+     *
+     * @return the hash; equal hashes mean equal subtrees with near certainty
+     */
+    public long getHash() {
+        return hash;
+    }
+
+    /**
+     * Recomputes this entity's hash and, if it changed while attached, updates the parent's.
+     */
+    protected void rehash() {
+        long old = hash;
+        hash = computeHash();
+        if (old != hash && parent != null && parent.getChild(name) == this) {
+            parent.childHashChanged(old, hash);
+        }
+    }
+
+    /**
+     * Computes this entity's hash from its own state and its children's current hashes.
+     *
+     * @return the hash
+     */
+    protected abstract long computeHash();
+
+    /**
+     * Combines an entity's type, name and payload (content or children) into one hash.
+     */
+    protected static long combine(String type, String name, long payload) {
+        long h = hashString(type);
+        h = mix(h ^ hashString(name));
+        return mix(h ^ payload);
+    }
+
+    /**
+     * Hashes a string to 64 bits with FNV-1a followed by a final mix.
+     */
+    protected static long hashString(String value) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            h ^= value.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        return mix(h);
+    }
+
+    // SplitMix64 finalizer, spreads every input bit over the whole result
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
 
     /**
      * Returns the type of the entity: drive, folder, textfile, or zipfile.
@@ -1,5 +1,8 @@
 package proofpoint.entities;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.time.LocalDateTime;
 
@@ -9,7 +12,10 @@ import java.time.LocalDateTime;
  */
 public class TextFile extends Entity implements Serializable {
     private static final long serialVersionUID = 1L;
-    private String content = "";
+    // Null while the content is spilled to the attached store's disk file
+    private volatile String content = "";
+    private transient ContentStore store;
+    private transient long contentHash = hashString("");
 
     /**
      * Constructs a new TextFile with the given name and parent container.
@@ -19,6 +25,7 @@ public class TextFile extends Entity implements Serializable {
      */
     public TextFile(String name, ContainerEntity parent) {
         super(name, parent);
+        rehash();
     }
 
     /**
@@ -27,7 +34,13 @@ public class TextFile extends Entity implements Serializable {
      * @param content the new content to be written to the file
      */
     public void setContent(String content) {
-        this.content = content;
+        if (store != null) {
+            store.onWrite(this, content);
+        } else {
+            this.content = content;
+        }
+        this.contentHash = hashString(content);
+        rehash();
         this.size = content.length(); // update size
         this.updatedAt = LocalDateTime.now(); // update timestamp
     }
@@ -38,9 +51,103 @@ public class TextFile extends Entity implements Serializable {
      * @return the content of the file
      */
     public String getContent() {
+        String current = content;
+        if (store == null) {
+            return current;
+        }
+        if (current == null) {
+            return store.fault(this);
+        }
+        store.onRead(this);
+        return current;
+    }
+
+    /**
+     * Attaches this file to a content store, or detaches it when the store is null.
+     * A detached file holds its content on the heap again.
+     *
+     * @param store the store that manages this file's content, or null
+     */
+    public void setContentStore(ContentStore store) {
+        if (this.store == store) {
+            return;
+        }
+        if (this.store != null) {
+            String current = getContent();
+            this.store.remove(this);
+            this.content = current;
+        }
+        this.store = store;
+        if (store != null) {
+            store.onWrite(this, content);
+        }
+    }
+
+    /**
+     * Drops this file from its content store without reading spilled content back,
+     * for files that are being deleted. If the content was spilled, it is lost and the
+     * file reads as empty afterwards.
+     */
+    public void discardContentStore() {
+        if (store == null) {
+            return;
+        }
+        store.remove(this);
+        store = null;
+        if (content == null) {
+            content = "";
+        }
+    }
+
+    /**
+     * Returns the content store this file is attached to.
+     *
+     * @return the store, or null if the content always stays on the heap
+     */
+    public ContentStore getContentStore() {
+        return store;
+    }
+
+    /**
+     * Returns whether the content is currently held on the heap.
+     *
+     * @return true if resident; false if spilled to disk
+     */
+    public boolean isResident() {
+        return content != null;
+    }
+
+    @Override
+    protected long computeHash() {
+        return combine(getType(), name, contentHash);
+    }
+
+    // Hooks used by ContentStore while holding its lock
+    String residentContent() {
         return content;
     }
 
+    void releaseContent() {
+        this.content = null;
+    }
+
+    void restoreContent(String content) {
+        this.content = content;
+    }
+
+    // Spilled content lives in the store, so read it back rather than writing a null
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        ObjectOutputStream.PutField fields = out.putFields();
+        fields.put("content", store != null ? store.peek(this) : content);
+        out.writeFields();
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        contentHash = hashString(content);
+        hash = computeHash();
+    }
+
     /**
      * Returns the type of this entity.
      *
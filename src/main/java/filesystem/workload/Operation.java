@@ -0,0 +1,132 @@
+package proofpoint.workload;
+
+/**
+ * A single recorded or generated file system operation.
+ *
+ * The meaning of the fields depends on the type:
+ * - CREATE: path of the new entity, argument is the entity type.
+ * - MOVE, COPY: source path, argument is the destination container path.
+ * - RENAME: path, argument is the new name.
+ * - SEARCH: no path, argument is the searched name.
+ * - WRITE: path, payloadSize is the content length (the content itself is not recorded).
+ * - DELETE, LIST, RESOLVE: path only.
+ * - DELETE_ALL: no path, argument is the glob.
+ * - MOVE_ALL, COPY_ALL: path is the destination container, argument is the glob.
+ * - DELETE_ALL_FILTERED, MOVE_ALL_FILTERED, COPY_ALL_FILTERED: as above, for a bulk operation
+ *   called with a predicate. The predicate is not recorded, so replay skips these.
+ *
+ * In a trace line, backslashes, tabs and line breaks inside a field are escaped with a
+ * backslash, a null field is written as {@code -}, and a field that is literally {@code -}
+ * is written as {@code \-}.
+ *
+ * @param timestampNanos nanoseconds since the recording started
+ * @param type           the operation type
+ * @param path           the primary path, or null
+ * @param argument       the secondary argument, or null
+ * @param payloadSize    the size of written content, 0 for other operations
+ */
+public record Operation(long timestampNanos, OperationType type, String path, String argument, long payloadSize) {
+
+    private static final String SEPARATOR = "\t";
+    private static final String NONE = "-";
+
+    /**
+     * Formats this operation as one tab-separated trace line.
+     *
+     * @return the trace line
+     */
+    public String toLine() {
+        return timestampNanos + SEPARATOR + type + SEPARATOR + encode(path) + SEPARATOR
+                + encode(argument) + SEPARATOR + payloadSize;
+    }
+
+    /**
+     * Parses a trace line produced by {@link #toLine()}.
+     *
+     * @param line the trace line
+     * @return the parsed operation
+     * @throws IllegalArgumentException If the line is malformed.
+     */
+    public static Operation parse(String line) {
+        String[] parts = line.split(SEPARATOR, -1);
+        if (parts.length != 5) {
+            throw new IllegalArgumentException("Invalid trace line: " + line);
+        }
+        try {
+            return new Operation(Long.parseLong(parts[0]), OperationType.valueOf(parts[1]),
+                    decode(parts[2]), decode(parts[3]), Long.parseLong(parts[4]));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid trace line: " + line, e);
+        }
+    }
+
+    private static String encode(String value) {
+        if (value == null) {
+            return NONE;
+        }
+        if (value.equals(NONE)) {
+            return "\\" + NONE;
+        }
+        StringBuilder out = new StringBuilder(value.length() + 8);
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '\\':
+                    out.append("\\\\");
+                    break;
+                case '\t':
+                    out.append("\\t");
+                    break;
+                case '\n':
+                    out.append("\\n");
+                    break;
+                case '\r':
+                    out.append("\\r");
+                    break;
+                default:
+                    out.append(c);
+            }
+        }
+        return out.toString();
+    }
+
+    private static String decode(String field) {
+        if (NONE.equals(field)) {
+            return null;
+        }
+        if (field.indexOf('\\') < 0) {
+            return field;
+        }
+        StringBuilder out = new StringBuilder(field.length());
+        for (int i = 0; i < field.length(); i++) {
+            char c = field.charAt(i);
+            if (c != '\\') {
+                out.append(c);
+                continue;
+            }
+            if (++i == field.length()) {
+                throw new IllegalArgumentException("Dangling escape in trace field: " + field);
+            }
+            switch (field.charAt(i)) {
+                case '\\':
+                    out.append('\\');
+                    break;
+                case 't':
+                    out.append('\t');
+                    break;
+                case 'n':
+                    out.append('\n');
+                    break;
+                case 'r':
+                    out.append('\r');
+                    break;
+                case '-':
+                    out.append('-');
+                    break;
+                default:
+                    throw new IllegalArgumentException("Invalid escape in trace field: " + field);
+            }
+        }
+        return out.toString();
+    }
+}
@@ -0,0 +1,23 @@
+package proofpoint.workload;
+
+/**
+ * The kinds of FileSystemManager operations captured in a workload trace.
+ */
+public enum OperationType {
+    CREATE,
+    DELETE,
+    MOVE,
+    COPY,
+    LIST,
+    WRITE,
+    RESOLVE,
+    SEARCH,
+    RENAME,
+    DELETE_ALL,
+    MOVE_ALL,
+    COPY_ALL,
+    // Bulk operations called with a predicate, which cannot be recorded, so they are never replayed
+    DELETE_ALL_FILTERED,
+    MOVE_ALL_FILTERED,
+    COPY_ALL_FILTERED
+}
@@ -0,0 +1,84 @@
+package proofpoint.workload;
+
+import java.util.Arrays;
+
+/**
+ * Throughput and latency results of a workload replay.
+ */
+public class ReplayReport {
+    private final int operations;
+    private final int errors;
+    private final int skipped;
+    private final long elapsedNanos;
+    private final long[] sortedLatencies;
+
+    /**
+     * Constructs a report from raw measurements.
+     *
+     * @param operations   the number of operations in the workload, including failed and skipped ones
+     * @param errors       the number of operations that threw
+     * @param skipped      the number of operations that could not be replayed and were skipped
+     * @param elapsedNanos the wall-clock duration of the replay
+     * @param latencies    latencies in nanoseconds of the operations that succeeded
+     */
+    public ReplayReport(int operations, int errors, int skipped, long elapsedNanos, long[] latencies) {
+        this.operations = operations;
+        this.errors = errors;
+        this.skipped = skipped;
+        this.elapsedNanos = elapsedNanos;
+        this.sortedLatencies = latencies.clone();
+        Arrays.sort(sortedLatencies);
+    }
+
+    public int getOperations() {
+        return operations;
+    }
+
+    public int getErrors() {
+        return errors;
+    }
+
+    public int getSkipped() {
+        return skipped;
+    }
+
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    /**
+     * Returns the achieved throughput. Skipped operations never ran, so they are not counted.
+     *
+     * @return operations per second
+     */
+    public double getThroughput() {
+        return elapsedNanos == 0 ? 0 : (operations - skipped) * 1_000_000_000.0 / elapsedNanos;
+    }
+
+    /**
+     * Returns a latency percentile of the successful operations using the nearest-rank method.
+     * Failed operations often return early, so they are left out rather than skewing the
+     * distribution towards zero.
+     *
+     * @param percentile the percentile between 0 and 100
+     * @return the latency in nanoseconds, or 0 if no operation succeeded
+     */
+    public long getPercentileNanos(double percentile) {
+        if (percentile < 0 || percentile > 100) {
+            throw new IllegalArgumentException("Percentile must be between 0 and 100: " + percentile);
+        }
+        if (sortedLatencies.length == 0) {
+            return 0;
+        }
+        int rank = (int) Math.ceil(percentile / 100 * sortedLatencies.length);
+        return sortedLatencies[Math.max(0, rank - 1)];
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d ops (%d errors, %d skipped) in %.1f ms, %.0f ops/s, latency us p50=%.1f p90=%.1f p99=%.1f p99.9=%.1f max=%.1f",
+                operations, errors, skipped, elapsedNanos / 1e6, getThroughput(),
+                getPercentileNanos(50) / 1e3, getPercentileNanos(90) / 1e3, getPercentileNanos(99) / 1e3,
+                getPercentileNanos(99.9) / 1e3, getPercentileNanos(100) / 1e3);
+    }
+}
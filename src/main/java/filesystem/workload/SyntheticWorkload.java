@@ -0,0 +1,184 @@
+package proofpoint.workload;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Generates a synthetic workload: a tree of folders and text files to set up,
+ * followed by a stream of operations drawn from a weighted mix.
+ *
+ * The generated tree is one or more drives, named W0, W1 and so on, each with folders nested {@code depth} levels deep,
+ * {@code fanout} subfolders per folder and {@code filesPerFolder} text files in each folder.
+ * Supported operation types in the mix are RESOLVE, WRITE, LIST, SEARCH, CREATE and DELETE.
+ */
+public class SyntheticWorkload {
+    private static final Set<OperationType> SUPPORTED = EnumSet.of(OperationType.RESOLVE, OperationType.WRITE,
+            OperationType.LIST, OperationType.SEARCH, OperationType.CREATE, OperationType.DELETE);
+
+    private final Random random;
+    private final Map<OperationType, Integer> mix = new EnumMap<>(OperationType.class);
+
+    private int drives = 1;
+    private int depth = 3;
+    private int fanout = 4;
+    private int filesPerFolder = 8;
+    private int payloadSize = 256;
+
+    private final List<String> folders = new ArrayList<>();
+    private final List<String> files = new ArrayList<>();
+    private int nextFileId;
+
+    /**
+     * Constructs a generator with the default tree shape and operation mix.
+     *
+     * @param seed the random seed, so the same settings always generate the same workload
+     */
+    public SyntheticWorkload(long seed) {
+        this.random = new Random(seed);
+        mix.put(OperationType.RESOLVE, 50);
+        mix.put(OperationType.WRITE, 30);
+        mix.put(OperationType.LIST, 10);
+        mix.put(OperationType.CREATE, 5);
+        mix.put(OperationType.DELETE, 3);
+        mix.put(OperationType.SEARCH, 2);
+    }
+
+    public void setDrives(int drives) {
+        this.drives = drives;
+    }
+
+    public void setDepth(int depth) {
+        this.depth = depth;
+    }
+
+    public void setFanout(int fanout) {
+        this.fanout = fanout;
+    }
+
+    public void setFilesPerFolder(int filesPerFolder) {
+        this.filesPerFolder = filesPerFolder;
+    }
+
+    public void setPayloadSize(int payloadSize) {
+        this.payloadSize = payloadSize;
+    }
+
+    /**
+     * Sets the relative weight of an operation type in the generated mix.
+     *
+     * @param type   the operation type
+     * @param weight the relative weight; 0 removes the type from the mix
+     * @throws IllegalArgumentException If the type is not supported or the weight is negative.
+     */
+    public void setWeight(OperationType type, int weight) {
+        if (!SUPPORTED.contains(type)) {
+            throw new IllegalArgumentException("Unsupported synthetic operation: " + type);
+        }
+        if (weight < 0) {
+            throw new IllegalArgumentException("Weight must not be negative: " + weight);
+        }
+        mix.put(type, weight);
+    }
+
+    /**
+     * Generates the operations that build the initial tree. Call before {@link #operations(int)}.
+     *
+     * @return the setup operations, in dependency order
+     */
+    public List<Operation> setupOperations() {
+        folders.clear();
+        files.clear();
+        List<Operation> result = new ArrayList<>();
+        for (int i = 0; i < drives; i++) {
+            String driveName = "W" + i;
+            result.add(new Operation(0, OperationType.CREATE, driveName, "drive", 0));
+            buildFolder(driveName, 0, result);
+        }
+        return result;
+    }
+
+    private void buildFolder(String path, int level, List<Operation> result) {
+        folders.add(path);
+        for (int i = 0; i < filesPerFolder; i++) {
+            String file = path + "\\file" + (nextFileId++) + ".txt";
+            files.add(file);
+            result.add(new Operation(0, OperationType.CREATE, file, "textfile", 0));
+            result.add(new Operation(0, OperationType.WRITE, file, null, payloadSize));
+        }
+        if (level == depth) {
+            return;
+        }
+        for (int i = 0; i < fanout; i++) {
+            String folder = path + "\\dir" + i;
+            result.add(new Operation(0, OperationType.CREATE, folder, "folder", 0));
+            buildFolder(folder, level + 1, result);
+        }
+    }
+
+    /**
+     * Generates a stream of operations against the tree built by {@link #setupOperations()}.
+     *
+     * @param count the number of operations to generate
+     * @return the generated operations
+     */
+    public List<Operation> operations(int count) {
+        int totalWeight = mix.values().stream().mapToInt(Integer::intValue).sum();
+        if (totalWeight == 0) {
+            throw new IllegalArgumentException("Operation mix is empty");
+        }
+        List<Operation> result = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            result.add(next(pick(totalWeight)));
+        }
+        return result;
+    }
+
+    private OperationType pick(int totalWeight) {
+        int roll = random.nextInt(totalWeight);
+        for (Map.Entry<OperationType, Integer> entry : mix.entrySet()) {
+            roll -= entry.getValue();
+            if (roll < 0) {
+                return entry.getKey();
+            }
+        }
+        throw new IllegalStateException("Unreachable");
+    }
+
+    private Operation next(OperationType type) {
+        // Fall back to creating files once deletes have emptied the tree
+        if (files.isEmpty() && type != OperationType.LIST && type != OperationType.SEARCH) {
+            type = OperationType.CREATE;
+        }
+        switch (type) {
+            case RESOLVE:
+                return new Operation(0, type, randomFile(), null, 0);
+            case WRITE:
+                return new Operation(0, type, randomFile(), null, payloadSize);
+            case LIST:
+                return new Operation(0, type, randomFolder(), null, 0);
+            case SEARCH:
+                return new Operation(0, type, null, "file" + random.nextInt(Math.max(1, nextFileId)) + ".txt", 0);
+            case CREATE:
+                String file = randomFolder() + "\\file" + (nextFileId++) + ".txt";
+                files.add(file);
+                return new Operation(0, type, file, "textfile", 0);
+            case DELETE:
+                return new Operation(0, type, files.remove(random.nextInt(files.size())), null, 0);
+            default:
+                throw new IllegalArgumentException("Unsupported synthetic operation: " + type);
+        }
+    }
+
+    private String randomFile() {
+        return files.get(random.nextInt(files.size()));
+    }
+
+    private String randomFolder() {
+        return folders.get(random.nextInt(folders.size()));
+    }
+}
@@ -0,0 +1,245 @@
+package proofpoint.workload;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Captures the operation stream of a FileSystemManager for later replay.
+ *
+ * A recorder either keeps operations in memory, up to a fixed capacity, or streams them to a
+ * trace file. In streaming mode, recording only hands the operation to a bounded queue that a
+ * background thread drains into the file; when the writer falls behind, recording blocks
+ * instead of growing the queue. Payloads are recorded by size, not content.
+ */
+public class WorkloadRecorder implements Closeable {
+    /**
+     * The default number of operations an in-memory recorder keeps.
+     */
+    public static final int DEFAULT_CAPACITY = 1 << 20;
+
+    private static final int STREAM_BUFFER_OPERATIONS = 8192;
+    // Queued by close() to tell the writer thread to stop
+    private static final Operation END = new Operation(-1, null, null, null, 0);
+
+    private final long startNanos = System.nanoTime();
+    private final AtomicLong dropped = new AtomicLong();
+
+    // In-memory mode
+    private final List<Operation> operations;
+    private final int capacity;
+
+    // Streaming mode
+    private final Path file;
+    private final BlockingQueue<Operation> buffer;
+    private final Thread writer;
+    private volatile IOException writeFailure;
+    private volatile boolean closed;
+
+    /**
+     * Constructs an in-memory recorder that keeps up to {@link #DEFAULT_CAPACITY} operations.
+     */
+    public WorkloadRecorder() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Constructs an in-memory recorder. Operations past the capacity are dropped and counted.
+     *
+     * @param capacity the maximum number of operations to keep
+     * @throws IllegalArgumentException If the capacity is negative.
+     */
+    public WorkloadRecorder(int capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("Capacity must not be negative: " + capacity);
+        }
+        this.operations = new ArrayList<>(Math.min(capacity, 1024));
+        this.capacity = capacity;
+        this.file = null;
+        this.buffer = null;
+        this.writer = null;
+    }
+
+    /**
+     * Constructs a recorder that streams operations to a trace file, one operation per line.
+     * The trace is complete once {@link #close()} returns.
+     *
+     * @param file the trace file to write
+     */
+    public WorkloadRecorder(Path file) {
+        BufferedWriter out;
+        try {
+            out = Files.newBufferedWriter(file, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error writing trace: " + file, e);
+        }
+        this.operations = null;
+        this.capacity = 0;
+        this.file = file;
+        this.buffer = new ArrayBlockingQueue<>(STREAM_BUFFER_OPERATIONS);
+        this.writer = new Thread(() -> writeLoop(out), "workload-recorder");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Records one operation, timestamped relative to when this recorder was created.
+     *
+     * @param type        the operation type
+     * @param path        the primary path, or null
+     * @param argument    the secondary argument, or null
+     * @param payloadSize the size of written content, 0 for other operations
+     */
+    public void record(OperationType type, String path, String argument, long payloadSize) {
+        Operation operation = new Operation(System.nanoTime() - startNanos, type, path, argument, payloadSize);
+        if (buffer == null) {
+            synchronized (operations) {
+                if (operations.size() < capacity) {
+                    operations.add(operation);
+                    return;
+                }
+            }
+            dropped.incrementAndGet();
+            return;
+        }
+        if (closed) {
+            dropped.incrementAndGet();
+            return;
+        }
+        try {
+            buffer.put(operation);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            dropped.incrementAndGet();
+        }
+    }
+
+    /**
+     * Returns the number of operations that were not recorded, because an in-memory recorder
+     * was full or a streaming recorder was already closed.
+     *
+     * @return the number of dropped operations
+     */
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    /**
+     * Returns a snapshot of the operations recorded so far.
+     *
+     * @return the recorded operations in arrival order
+     * @throws IllegalStateException If this recorder streams to a file.
+     */
+    public List<Operation> getOperations() {
+        if (operations == null) {
+            throw new IllegalStateException("Operations are streamed to " + file);
+        }
+        synchronized (operations) {
+            return new ArrayList<>(operations);
+        }
+    }
+
+    /**
+     * Writes the operations recorded in memory to a trace file, one operation per line.
+     *
+     * @param file the trace file to write
+     * @throws IllegalStateException If this recorder streams to a file.
+     */
+    public void writeTo(Path file) {
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            for (Operation operation : getOperations()) {
+                writer.write(operation.toLine());
+                writer.newLine();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error writing trace: " + file, e);
+        }
+    }
+
+    private void writeLoop(BufferedWriter out) {
+        List<Operation> batch = new ArrayList<>();
+        try {
+            while (true) {
+                batch.add(buffer.take());
+                buffer.drainTo(batch);
+                for (Operation operation : batch) {
+                    if (operation == END) {
+                        out.close();
+                        return;
+                    }
+                    // After a failure keep draining, so recording threads never block
+                    if (writeFailure == null) {
+                        try {
+                            out.write(operation.toLine());
+                            out.newLine();
+                        } catch (IOException e) {
+                            writeFailure = e;
+                        }
+                    }
+                }
+                batch.clear();
+            }
+        } catch (IOException e) {
+            if (writeFailure == null) {
+                writeFailure = e;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Stops a streaming recorder and waits until every operation recorded before is written.
+     * Does nothing for an in-memory recorder.
+     *
+     * @throws IOException If writing the trace failed.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (writer == null || closed) {
+            return;
+        }
+        closed = true;
+        try {
+            buffer.put(END);
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while writing trace: " + file, e);
+        }
+        if (writeFailure != null) {
+            throw writeFailure;
+        }
+    }
+
+    /**
+     * Reads a trace file written by {@link #writeTo(Path)} or by a streaming recorder.
+     *
+     * @param file the trace file to read
+     * @return the operations in the trace
+     */
+    public static List<Operation> readFrom(Path file) {
+        List<Operation> result = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.isEmpty()) {
+                    result.add(Operation.parse(line));
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error reading trace: " + file, e);
+        }
+        return result;
+    }
+}
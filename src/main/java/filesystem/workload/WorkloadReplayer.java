@@ -0,0 +1,304 @@
+package proofpoint.workload;
+
+import proofpoint.FileSystem;
+import proofpoint.FileSystemManager;
+import proofpoint.ShardedFileSystemManager;
+import proofpoint.entities.Entity;
+import proofpoint.entities.TextFile;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntConsumer;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Replays a recorded or synthetic workload against a file system and measures it.
+ *
+ * Operations are partitioned by the drive they touch, and each partition is pinned to one of a
+ * fixed number of threads, so operations on the same drive run in trace order just as they
+ * were recorded. Operations on different drives run in parallel, which means more threads than
+ * drives add nothing. An operation that may touch several drives, such as a move between drives
+ * or a bulk operation whose glob starts with a wildcard, waits for everything before it and
+ * runs alone. Searches only read, so they are spread over the threads without ordering.
+ *
+ * Without a target rate operations run as fast as possible. With a target rate, operation
+ * {@code i} is scheduled at {@code i / rate} seconds after the start, and its latency is
+ * measured from that scheduled time, so a stalled system shows up as queueing delay instead
+ * of being hidden.
+ *
+ * Failed operations (e.g. a path deleted by an earlier operation) are counted as errors
+ * and do not stop the replay; their latencies are left out of the report. Bulk operations
+ * that were recorded with a predicate are skipped, because replaying them without it would
+ * affect more entities than the original call did.
+ */
+public class WorkloadReplayer {
+    private static final int BARRIER = -1;
+    private static final Set<OperationType> UNREPLAYABLE = EnumSet.of(OperationType.DELETE_ALL_FILTERED,
+            OperationType.MOVE_ALL_FILTERED, OperationType.COPY_ALL_FILTERED);
+
+    private final FileSystem fsm;
+    private final int threads;
+    private final double targetOpsPerSecond;
+    // Written payloads are only sized, so reuse one string per size
+    private final Map<Long, String> payloads = new ConcurrentHashMap<>();
+
+    /**
+     * Constructs a replayer.
+     *
+     * @param fsm                the file system to run operations against
+     * @param threads            the number of replay threads
+     * @param targetOpsPerSecond the target rate, or 0 to run as fast as possible
+     * @throws IllegalArgumentException If threads is less than 1 or the rate is negative.
+     */
+    public WorkloadReplayer(FileSystem fsm, int threads, double targetOpsPerSecond) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Thread count must be at least 1: " + threads);
+        }
+        if (targetOpsPerSecond < 0) {
+            throw new IllegalArgumentException("Target rate must not be negative: " + targetOpsPerSecond);
+        }
+        this.fsm = fsm;
+        this.threads = threads;
+        this.targetOpsPerSecond = targetOpsPerSecond;
+    }
+
+    /**
+     * Replays the given operations and waits for all of them to finish.
+     *
+     * @param operations the operations to replay
+     * @return the throughput and latency report
+     */
+    public ReplayReport replay(List<Operation> operations) {
+        int count = operations.size();
+        long[] latencies = new long[count];
+        // Failed and skipped operations are left out of the latencies
+        boolean[] excluded = new boolean[count];
+        int skipped = 0;
+        AtomicInteger errors = new AtomicInteger();
+        long intervalNanos = targetOpsPerSecond == 0 ? 0 : (long) (1_000_000_000L / targetOpsPerSecond);
+
+        // Each thread runs its partitions in trace order; BARRIER marks where an operation
+        // spanning several drives runs alone
+        List<List<Integer>> plans = new ArrayList<>(threads);
+        for (int t = 0; t < threads; t++) {
+            plans.add(new ArrayList<>());
+        }
+        List<Integer> spanning = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            if (UNREPLAYABLE.contains(operations.get(i).type())) {
+                excluded[i] = true;
+                skipped++;
+                continue;
+            }
+            String key = partitionKey(operations.get(i));
+            if (key == null) {
+                spanning.add(i);
+                for (List<Integer> plan : plans) {
+                    plan.add(BARRIER);
+                }
+            } else {
+                plans.get(Math.floorMod(key.hashCode(), threads)).add(i);
+            }
+        }
+
+        long start = System.nanoTime();
+        IntConsumer run = i -> {
+            long begin = System.nanoTime();
+            if (intervalNanos > 0) {
+                long scheduled = start + i * intervalNanos;
+                while ((begin = System.nanoTime()) < scheduled) {
+                    LockSupport.parkNanos(scheduled - begin);
+                }
+                begin = scheduled;
+            }
+            try {
+                apply(operations.get(i));
+            } catch (RuntimeException e) {
+                errors.incrementAndGet();
+                excluded[i] = true;
+            }
+            latencies[i] = System.nanoTime() - begin;
+        };
+        Iterator<Integer> nextSpanning = spanning.iterator();
+        // The last thread to arrive runs the spanning operation before releasing the others
+        CyclicBarrier barrier = new CyclicBarrier(threads, () -> run.accept(nextSpanning.next()));
+
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            List<Integer> plan = plans.get(t);
+            workers[t] = new Thread(() -> {
+                for (int i : plan) {
+                    if (i != BARRIER) {
+                        run.accept(i);
+                        continue;
+                    }
+                    try {
+                        barrier.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    } catch (BrokenBarrierException e) {
+                        return;
+                    }
+                }
+            }, "replay-" + t);
+            workers[t].start();
+        }
+        for (Thread thread : workers) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while replaying", e);
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+
+        long[] succeeded = new long[count - errors.get() - skipped];
+        int next = 0;
+        for (int i = 0; i < count; i++) {
+            if (!excluded[i]) {
+                succeeded[next++] = latencies[i];
+            }
+        }
+        return new ReplayReport(count, errors.get(), skipped, elapsed, succeeded);
+    }
+
+    // Returns the key of the partition an operation belongs to, or null if it may touch several drives
+    private static String partitionKey(Operation operation) {
+        String drive = driveOf(operation.path());
+        switch (operation.type()) {
+            case SEARCH:
+                return operation.argument();
+            case DELETE_ALL:
+                return driveOf(operation.argument());
+            case MOVE:
+            case COPY:
+            case MOVE_ALL:
+            case COPY_ALL:
+                return drive != null && drive.equals(driveOf(operation.argument())) ? drive : null;
+            case RENAME:
+                // Renaming a drive moves everything after it to the partition of the new name
+                return operation.path() != null && operation.path().indexOf('\\') < 0 ? null : drive;
+            default:
+                return drive;
+        }
+    }
+
+    // Returns the first segment of a path or glob, or null if it is missing or has wildcards
+    private static String driveOf(String path) {
+        if (path == null) {
+            return null;
+        }
+        int split = path.indexOf('\\');
+        String drive = split < 0 ? path : path.substring(0, split);
+        return drive.indexOf('*') >= 0 || drive.indexOf('?') >= 0 ? null : drive;
+    }
+
+    /**
+     * Applies a single operation to the file system.
+     *
+     * @param operation the operation to apply
+     * @throws IllegalArgumentException If the file system rejects the operation.
+     */
+    public void apply(Operation operation) {
+        switch (operation.type()) {
+            case CREATE:
+                String path = operation.path();
+                int split = path.lastIndexOf('\\');
+                if (split < 0) {
+                    fsm.create(operation.argument(), path, "");
+                } else {
+                    fsm.create(operation.argument(), path.substring(split + 1), path.substring(0, split));
+                }
+                break;
+            case DELETE:
+                fsm.delete(operation.path());
+                break;
+            case MOVE:
+                fsm.move(operation.path(), operation.argument());
+                break;
+            case COPY:
+                fsm.copy(operation.path(), operation.argument());
+                break;
+            case LIST:
+                fsm.list(operation.path());
+                break;
+            case WRITE:
+                fsm.writeToFile(operation.path(), payloads.computeIfAbsent(operation.payloadSize(),
+                        size -> "x".repeat(size.intValue())));
+                break;
+            case RESOLVE:
+                Entity entity = fsm.resolve(operation.path());
+                if (entity instanceof TextFile) {
+                    ((TextFile) entity).getContent();
+                }
+                break;
+            case SEARCH:
+                fsm.search(operation.argument());
+                break;
+            case RENAME:
+                fsm.rename(operation.path(), operation.argument());
+                break;
+            case DELETE_ALL:
+                fsm.deleteAll(operation.argument());
+                break;
+            case MOVE_ALL:
+                fsm.moveAll(operation.argument(), operation.path());
+                break;
+            case COPY_ALL:
+                fsm.copyAll(operation.argument(), operation.path());
+                break;
+            case DELETE_ALL_FILTERED:
+            case MOVE_ALL_FILTERED:
+            case COPY_ALL_FILTERED:
+                throw new IllegalArgumentException("Cannot replay a bulk operation without its predicate: " + operation);
+            default:
+                throw new IllegalArgumentException("Unsupported operation: " + operation.type());
+        }
+    }
+
+    /**
+     * Command-line entry point.
+     *
+     * Usage: {@code WorkloadReplayer <trace-file|synthetic> [threads] [ops-per-second] [synthetic-ops] [shards]}
+     *
+     * With a shard count the workload runs against a ShardedFileSystemManager. The synthetic
+     * workload spreads its tree over one drive per thread or per shard, whichever is more, so
+     * runs with and without shards replay the same operations.
+     *
+     * @param args the command-line arguments
+     */
+    public static void main(String[] args) {
+        if (args.length < 1) {
+            System.err.println("Usage: WorkloadReplayer <trace-file|synthetic> [threads] [ops-per-second] [synthetic-ops] [shards]");
+            System.exit(1);
+        }
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : 1;
+        double rate = args.length > 2 ? Double.parseDouble(args[2]) : 0;
+        int shards = args.length > 4 ? Integer.parseInt(args[4]) : 0;
+
+        FileSystem fsm = shards > 0 ? new ShardedFileSystemManager(shards) : new FileSystemManager();
+        WorkloadReplayer replayer = new WorkloadReplayer(fsm, threads, rate);
+        List<Operation> operations;
+        if (args[0].equals("synthetic")) {
+            SyntheticWorkload workload = new SyntheticWorkload(42);
+            workload.setDrives(Math.max(threads, shards));
+            // Build the tree single-threaded and unmeasured, so creates happen before use
+            new WorkloadReplayer(fsm, 1, 0).replay(workload.setupOperations());
+            operations = workload.operations(args.length > 3 ? Integer.parseInt(args[3]) : 100_000);
+        } else {
+            operations = WorkloadRecorder.readFrom(Path.of(args[0]));
+        }
+        System.out.println(replayer.replay(operations));
+    }
+}
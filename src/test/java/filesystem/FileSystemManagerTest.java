@@ -1,9 +1,20 @@
-package filesystem;
+package proofpoint;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
-import filesystem.entities.Entity;
-import filesystem.entities.TextFile;
+import proofpoint.entities.ContentStore;
+import proofpoint.entities.Entity;
+import proofpoint.entities.TextFile;
+import proofpoint.workload.Operation;
+import proofpoint.workload.OperationType;
+import proofpoint.workload.ReplayReport;
+import proofpoint.workload.WorkloadRecorder;
+import proofpoint.workload.WorkloadReplayer;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -64,6 +75,13 @@ public class FileSystemManagerTest {
         assertNotNull(fsm.resolve("C\\Projects\\Archive.zip\\README.txt"));
 
         assertThrows(IllegalArgumentException.class, () -> fsm.resolve("C\\Projects\\README.txt"));
+
+        // A zip file rejects folders; the folder must stay where it was, also in the indexes
+        fsm.setIndexingEnabled(true);
+        assertThrows(IllegalArgumentException.class, () -> fsm.move("C\\Projects\\Docs", "C\\Projects\\Archive.zip"));
+        assertNotNull(fsm.resolve("C\\Projects\\Docs"));
+        List<Entity> folders = fsm.find(null, new Query().type("folder").sortBy(Query.SortKey.NAME, false));
+        assertEquals(List.of("C\\Projects\\Docs", "C\\Projects"), folders.stream().map(Entity::getPath).toList());
     }
 
     /**
@@ -86,4 +104,238 @@ public class FileSystemManagerTest {
         assertThrows(IllegalArgumentException.class, () -> fsm.resolve("C\\Projects"));
         assertThrows(IllegalArgumentException.class, () -> fsm.resolve("C\\Projects\\README.txt"));
     }
+
+    /**
+     * Tests that contents over the heap budget are spilled and read back transparently.
+     */
+    @Test
+    void testContentSpillsAndFaultsBack() throws Exception {
+        try (ContentStore store = new ContentStore(64)) {
+            FileSystemManager spilling = new FileSystemManager(store);
+            spilling.create("drive", "D", "");
+            for (int i = 0; i < 5; i++) {
+                spilling.create("textfile", "file" + i + ".txt", "D");
+                spilling.writeToFile("D\\file" + i + ".txt", "content of file number " + i);
+            }
+            store.flush();
+
+            assertTrue(store.getResidentBytes() <= 64);
+            assertTrue(store.getSpillCount() > 0);
+            TextFile first = (TextFile) spilling.resolve("D\\file0.txt");
+            assertFalse(first.isResident());
+
+            assertEquals("content of file number 0", first.getContent());
+            assertTrue(first.isResident());
+            assertEquals(1, store.getFaultCount());
+
+            spilling.delete("D\\file1.txt");
+            assertEquals(1, store.getFaultCount());
+        }
+    }
+
+    /**
+     * Tests that a recorded operation stream replays into an identical tree.
+     */
+    @Test
+    void testRecordAndReplay() {
+        WorkloadRecorder recorder = new WorkloadRecorder();
+        FileSystemManager recorded = new FileSystemManager();
+        recorded.setRecorder(recorder);
+        recorded.create("drive", "C", "");
+        recorded.create("folder", "Docs", "C");
+        recorded.create("textfile", "notes.txt", "C\\Docs");
+        recorded.writeToFile("C\\Docs\\notes.txt", "twelve bytes");
+        recorded.rename("C\\Docs\\notes.txt", "todo.txt");
+
+        assertEquals(5, recorder.getOperations().size());
+
+        FileSystemManager replayed = new FileSystemManager();
+        ReplayReport report = new WorkloadReplayer(replayed, 1, 0).replay(recorder.getOperations());
+
+        assertEquals(5, report.getOperations());
+        assertEquals(0, report.getErrors());
+        assertEquals(12, replayed.resolve("C\\Docs\\todo.txt").getSize());
+
+        // Operations on a renamed drive must still run after the rename
+        recorded.rename("C", "D");
+        recorded.create("folder", "Archive", "D");
+        recorded.move("D\\Docs\\todo.txt", "D\\Archive");
+        FileSystemManager parallel = new FileSystemManager();
+        ReplayReport parallelReport = new WorkloadReplayer(parallel, 2, 0).replay(recorder.getOperations());
+        assertEquals(0, parallelReport.getErrors());
+        assertEquals(12, parallel.resolve("D\\Archive\\todo.txt").getSize());
+
+        Operation tricky = new Operation(1, OperationType.RENAME, "-", "a\tb\\c", 0);
+        assertEquals(tricky, Operation.parse(tricky.toLine()));
+    }
+
+    /**
+     * Tests that move and copy work across drives owned by different shards,
+     * and that a rejected cross-shard move leaves the source in place.
+     */
+    @Test
+    void testShardedCrossDriveMoveAndCopy() {
+        try (ShardedFileSystemManager sharded = new ShardedFileSystemManager(2)) {
+            sharded.create("drive", "C", "");
+            sharded.create("drive", "D", "");
+            sharded.create("folder", "Projects", "C");
+            sharded.create("textfile", "README.txt", "C\\Projects");
+            sharded.create("zipfile", "Archive.zip", "D");
+
+            sharded.copy("C\\Projects", "D");
+            assertNotNull(sharded.resolve("D\\Projects\\README.txt"));
+
+            assertThrows(IllegalArgumentException.class, () -> sharded.move("C\\Projects", "D\\Archive.zip"));
+            assertNotNull(sharded.resolve("C\\Projects\\README.txt"));
+
+            sharded.move("C\\Projects\\README.txt", "D\\Archive.zip");
+            assertEquals("D\\Archive.zip\\README.txt", sharded.resolve("D\\Archive.zip\\README.txt").getPath());
+            assertThrows(IllegalArgumentException.class, () -> sharded.resolve("C\\Projects\\README.txt"));
+        }
+    }
+
+    /**
+     * Tests that a rejected cross-shard move keeps its entity while another thread keeps trying
+     * to create an entity of the same name at the source.
+     */
+    @Test
+    void testShardedRejectedMoveUnderContention() throws Exception {
+        try (ShardedFileSystemManager sharded = new ShardedFileSystemManager(2)) {
+            sharded.create("drive", "C", "");
+            sharded.create("drive", "D", "");
+            sharded.create("folder", "Projects", "C");
+            sharded.create("textfile", "README.txt", "C\\Projects");
+            sharded.create("zipfile", "Archive.zip", "D");
+
+            Thread creator = new Thread(() -> {
+                for (int i = 0; i < 20_000; i++) {
+                    try {
+                        sharded.create("folder", "Projects", "C");
+                    } catch (IllegalArgumentException expected) {
+                        // The original is still in place
+                    }
+                }
+            });
+            creator.start();
+            for (int i = 0; i < 10_000; i++) {
+                assertThrows(IllegalArgumentException.class, () -> sharded.move("C\\Projects", "D\\Archive.zip"));
+                assertEquals(1, sharded.moveAll("C\\Projects", "D\\Archive.zip").getSkipped());
+            }
+            creator.join();
+
+            assertNotNull(sharded.resolve("C\\Projects\\README.txt"));
+        }
+    }
+
+    /**
+     * Tests glob-based bulk delete and move, including "**" across several levels.
+     */
+    @Test
+    void testBulkDeleteAndMoveByPattern() {
+        fsm.create("folder", "logs", "C");
+        fsm.create("folder", "old", "C\\logs");
+        fsm.create("textfile", "a.tmp", "C\\logs");
+        fsm.create("textfile", "b.tmp", "C\\logs\\old");
+        fsm.create("textfile", "keep.txt", "C\\logs\\old");
+        fsm.create("folder", "trash", "C");
+
+        BulkResult moved = fsm.moveAll("C\\logs\\*.tmp", "C\\trash");
+        assertEquals(1, moved.getApplied());
+        assertNotNull(fsm.resolve("C\\trash\\a.tmp"));
+
+        BulkResult deleted = fsm.deleteAll("C\\**\\*.tmp");
+        assertEquals(2, deleted.getApplied());
+        assertThrows(IllegalArgumentException.class, () -> fsm.resolve("C\\logs\\old\\b.tmp"));
+        assertNotNull(fsm.resolve("C\\logs\\old\\keep.txt"));
+    }
+
+    /**
+     * Tests that container hashes track changes, survive a save and load, and that a sync only
+     * applies what changed.
+     */
+    @Test
+    void testDiffAndSyncUsingHashes() throws Exception {
+        FileSystemManager replica = new FileSystemManager();
+        TreeDiff.sync(fsm, replica);
+        assertEquals(fsm.resolve("C").getHash(), replica.resolve("C").getHash());
+
+        long before = fsm.resolve("C\\Projects").getHash();
+        fsm.writeToFile("C\\Projects\\README.txt", "Updated");
+        fsm.create("folder", "Docs", "C");
+        assertNotEquals(before, fsm.resolve("C\\Projects").getHash());
+
+        List<TreeChange> changes = TreeDiff.sync(fsm, replica);
+        assertEquals(2, changes.size());
+        assertEquals("Updated", ((TextFile) replica.resolve("C\\Projects\\README.txt")).getContent());
+        assertTrue(TreeDiff.diff(replica, fsm).isEmpty());
+
+        Path saved = Files.createTempFile("filesystem", ".ser");
+        try {
+            fsm.saveToDisk(saved.toString());
+            FileSystemManager loaded = new FileSystemManager();
+            loaded.loadFromDisk(saved.toString());
+            assertEquals(fsm.resolve("C").getHash(), loaded.resolve("C").getHash());
+            assertTrue(TreeDiff.diff(loaded, fsm).isEmpty());
+        } finally {
+            Files.deleteIfExists(saved);
+        }
+    }
+
+    /**
+     * Tests that indexed queries track writes and moves, that the planner picks an index scan
+     * on a large tree, including an ordered scan that stops at the limit, and that the results
+     * agree with an unindexed walk.
+     */
+    @Test
+    void testFindWithAttributeIndexes() {
+        fsm.setIndexingEnabled(true);
+        fsm.create("folder", "Docs", "C");
+        fsm.create("textfile", "big.txt", "C\\Projects");
+        fsm.create("textfile", "small.txt", "C\\Projects");
+        fsm.writeToFile("C\\Projects\\big.txt", "x".repeat(100));
+        fsm.writeToFile("C\\Projects\\small.txt", "x");
+        fsm.move("C\\Projects\\big.txt", "C\\Docs");
+
+        Query query = new Query().type("textfile").sizeAbove(10);
+        List<Entity> found = fsm.find("C\\Docs", query);
+        assertEquals(1, found.size());
+        assertEquals("C\\Docs\\big.txt", found.get(0).getPath());
+        assertTrue(fsm.find("C\\Projects", query).isEmpty());
+
+        List<Entity> bySize = fsm.find(null, new Query().type("textfile").sortBy(Query.SortKey.SIZE, true).limit(2));
+        fsm.setIndexingEnabled(false);
+        assertEquals(bySize, fsm.find(null, new Query().type("textfile").sortBy(Query.SortKey.SIZE, true).limit(2)));
+        assertEquals("big.txt", bySize.get(0).getName());
+
+        // Distinct sizes in scrambled order, so size and update time are not correlated
+        fsm.setIndexingEnabled(true);
+        fsm.create("folder", "Data", "C");
+        LocalDateTime midway = null;
+        for (int i = 0; i < 1500; i++) {
+            fsm.create("textfile", "data" + i + ".txt", "C\\Data");
+            fsm.writeToFile("C\\Data\\data" + i + ".txt", "x".repeat(i * 7 % 1500));
+            if (i == 749) {
+                midway = LocalDateTime.now();
+            }
+        }
+
+        Query selective = new Query().type("textfile").sizeAbove(1490).sortBy(Query.SortKey.NAME, false);
+        Query newest = new Query().sizeBelow(300).updatedAfter(midway).sortBy(Query.SortKey.UPDATED_AT, true).limit(5);
+        assertEquals("index:size", fsm.explain(null, selective));
+        assertEquals("index:updatedAt", fsm.explain(null, newest));
+        assertEquals("walk", fsm.explain("C\\Projects", selective));
+        List<Entity> indexed = fsm.find(null, selective);
+        List<Entity> indexedNewest = fsm.find(null, newest);
+
+        fsm.setIndexingEnabled(false);
+        assertEquals("walk", fsm.explain(null, newest));
+        assertEquals(9, indexed.size());
+        assertEquals(fsm.find(null, selective), indexed);
+        // Entities updated at the same instant may tie, so compare the sort keys
+        List<Entity> walkedNewest = fsm.find(null, newest);
+        assertEquals(5, indexedNewest.size());
+        assertEquals(walkedNewest.stream().map(Entity::getUpdatedAt).toList(),
+                indexedNewest.stream().map(Entity::getUpdatedAt).toList());
+        assertTrue(indexedNewest.stream().allMatch(newest::matches));
+    }
 }